@@ -0,0 +1,99 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Two freshly created, absolute, canonical directories the benchmarks can switch between, in all the forms
+ * {@link io.github.zebalu.badidea.chdir.ChangeDir} accepts. The forms are built once, so the benchmarks do not measure
+ * their creation.
+ */
+final class BenchmarkDirs {
+
+    private final String original;
+    private final Path root;
+    private final Path firstPath;
+    private final Path secondPath;
+    private final File firstFile;
+    private final File secondFile;
+    private final String firstString;
+    private final String secondString;
+
+    private BenchmarkDirs(String original, Path root, Path firstPath, Path secondPath) {
+        this.original = original;
+        this.root = root;
+        this.firstPath = firstPath;
+        this.secondPath = secondPath;
+        this.firstFile = firstPath.toFile();
+        this.secondFile = secondPath.toFile();
+        this.firstString = firstPath.toString();
+        this.secondString = secondPath.toString();
+    }
+
+    static BenchmarkDirs create() {
+        try {
+            Path root = Files.createTempDirectory("jchdir-bench").toRealPath();
+            return new BenchmarkDirs(System.getProperty("user.dir"), root,
+                    Files.createDirectory(root.resolve("first")), Files.createDirectory(root.resolve("second")));
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Can not create benchmark directories", ioe);
+        }
+    }
+
+    void delete() {
+        try {
+            Files.deleteIfExists(firstPath);
+            Files.deleteIfExists(secondPath);
+            Files.deleteIfExists(root);
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Can not delete benchmark directories", ioe);
+        }
+    }
+
+    String original() {
+        return original;
+    }
+
+    Path firstPath() {
+        return firstPath;
+    }
+
+    Path secondPath() {
+        return secondPath;
+    }
+
+    File firstFile() {
+        return firstFile;
+    }
+
+    File secondFile() {
+        return secondFile;
+    }
+
+    String firstString() {
+        return firstString;
+    }
+
+    String secondString() {
+        return secondString;
+    }
+}
@@ -0,0 +1,108 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.DirHandle;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the full {@link ChangeDir} round trip (validation, reflective commit and the selected native backend).
+ * Every invocation flips between two existing directories, so no call is a no-op.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class ChangeDirBenchmark {
+
+    private ChangeDir changeDir;
+    private BenchmarkDirs dirs;
+    private DirHandle firstHandle;
+    private DirHandle secondHandle;
+    private boolean flip;
+
+    /**
+     * Creates the directories, initialises the {@link ChangeDir} instance, so first use is not measured, and prepares
+     * the directories.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        dirs = BenchmarkDirs.create();
+        changeDir = ChangeDir.getInstance();
+        firstHandle = changeDir.prepare(dirs.firstString());
+        secondHandle = changeDir.prepare(dirs.secondString());
+    }
+
+    /**
+     * Restores the original working directory and removes the created directories.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        changeDir.changeDir(dirs.original());
+        dirs.delete();
+    }
+
+    /**
+     * Changes directory with a {@link String} argument.
+     */
+    @Benchmark
+    public void changeDirString() {
+        flip = !flip;
+        changeDir.changeDir(flip ? dirs.firstString() : dirs.secondString());
+    }
+
+    /**
+     * Changes directory with a {@link File} argument.
+     */
+    @Benchmark
+    public void changeDirFile() {
+        flip = !flip;
+        changeDir.changeDir(flip ? dirs.firstFile() : dirs.secondFile());
+    }
+
+    /**
+     * Changes directory with a {@link Path} argument.
+     */
+    @Benchmark
+    public void changeDirPath() {
+        flip = !flip;
+        changeDir.changeDir(flip ? dirs.firstPath() : dirs.secondPath());
+    }
+
+    /**
+     * Changes directory with a prepared {@link DirHandle}.
+     */
+    @Benchmark
+    public void changeDirHandle() {
+        flip = !flip;
+        changeDir.changeDir(flip ? firstHandle : secondHandle);
+    }
+
+    /**
+     * Reads the current working directory.
+     * @return the current working directory
+     */
+    @Benchmark
+    public String getCWD() {
+        return changeDir.getCWD();
+    }
+}
@@ -0,0 +1,87 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.CwdVerification;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Checks that a cached directory handle is not followed, once its directory is gone from its path. It switches into
+ * a directory, leaves it, deletes it, and expects the next switch to it to fail with
+ * {@link IllegalArgumentException}. Then it does the same with a directory that is renamed and recreated under the
+ * same name, and expects to land in the new one. It exits with 1 otherwise.
+ * <p>
+ * The <code>fdCacheCheck</code> gradle task pins the <code>fdcache</code> backend with a cache, any other backend should pass it
+ * just as well.
+ */
+public final class FdCacheStaleCheck {
+
+    private FdCacheStaleCheck() {
+    }
+
+    /**
+     * Runs the check.
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        BenchmarkDirs dirs = BenchmarkDirs.create();
+        ChangeDir changeDir = ChangeDir.getInstance();
+        Path renamed = dirs.secondPath().resolveSibling("renamed");
+        boolean failed = false;
+        try {
+            changeDir.changeDir(dirs.firstString());
+            changeDir.changeDir(dirs.original());
+            Files.delete(dirs.firstPath());
+            try {
+                changeDir.changeDir(dirs.firstString());
+                System.err.println("Changed into deleted directory: " + changeDir.verify());
+                failed = true;
+            } catch (IllegalArgumentException expected) {
+                System.out.println("Deleted directory rejected: " + expected.getMessage());
+            }
+
+            changeDir.changeDir(dirs.secondString());
+            changeDir.changeDir(dirs.original());
+            Files.move(dirs.secondPath(), renamed);
+            Files.createDirectory(dirs.secondPath());
+            changeDir.changeDir(dirs.secondString());
+            CwdVerification verification = changeDir.verify();
+            System.out.println("Recreated directory: " + verification);
+            if (!verification.isConsistent() || !dirs.secondString().equals(verification.nativeDir())) {
+                System.err.println("Native working directory is not the recreated directory");
+                failed = true;
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Can not modify check directories", ioe);
+        } finally {
+            changeDir.changeDir(dirs.original());
+            try {
+                Files.deleteIfExists(renamed);
+            } catch (IOException ioe) {
+                throw new UncheckedIOException("Can not delete check directories", ioe);
+            }
+            dirs.delete();
+        }
+        if (failed) {
+            System.exit(1);
+        }
+    }
+}
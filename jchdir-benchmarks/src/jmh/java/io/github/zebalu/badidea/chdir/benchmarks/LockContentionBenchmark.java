@@ -0,0 +1,171 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.CwdVerification;
+import io.github.zebalu.badidea.chdir.LockStrategy;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link ChangeDir} under contention, for every {@link LockStrategy} and both values of
+ * {@link io.github.zebalu.badidea.chdir.ChdirConfig#fairLock()} where it matters. Writers change directory, readers
+ * call {@link ChangeDir#verify()}, which takes the read side of the lock (or the only lock). Each group has its own
+ * writer / reader ratio; <code>-PjmhThreadGroups=1,63</code> overrides the thread counts of the groups, so the same
+ * suite can be scaled from 1 to N threads.
+ * <p>
+ * The strategy is set as a system property before the first use of {@link ChangeDir}, that is why every trial needs its
+ * own fork.
+ */
+@State(Scope.Group)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class LockContentionBenchmark {
+
+    /** The lock strategy, with a <code>-fair</code> suffix for the fair variants. */
+    @Param({"reentrant", "reentrant-fair", "stamped", "readwrite", "readwrite-fair", "singlewriter"})
+    public String lock;
+
+    private ChangeDir changeDir;
+    private BenchmarkDirs dirs;
+
+    /**
+     * Selects the strategy, creates the directories and initialises the {@link ChangeDir} instance.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        boolean fair = lock.endsWith("-fair");
+        String strategy = fair ? lock.substring(0, lock.length() - "-fair".length()) : lock;
+        System.setProperty("jchdir.lockStrategy", strategyName(strategy).name());
+        System.setProperty("jchdir.fairLock", Boolean.toString(fair));
+        dirs = BenchmarkDirs.create();
+        changeDir = ChangeDir.getInstance();
+    }
+
+    /**
+     * Restores the original working directory and removes the created directories.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        changeDir.changeDir(dirs.original());
+        dirs.delete();
+    }
+
+    /**
+     * Per thread flip, so writers do not share a field.
+     */
+    @State(Scope.Thread)
+    public static class Flip {
+        private boolean value;
+
+        boolean next() {
+            value = !value;
+            return value;
+        }
+    }
+
+    /**
+     * Writer of the read mostly group.
+     * @param flip per thread state
+     */
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(1)
+    public void readMostlyWrite(Flip flip) {
+        write(flip);
+    }
+
+    /**
+     * Readers of the read mostly group.
+     * @return the verification
+     */
+    @Benchmark
+    @Group("readMostly")
+    @GroupThreads(7)
+    public CwdVerification readMostlyRead() {
+        return changeDir.verify();
+    }
+
+    /**
+     * Writers of the balanced group.
+     * @param flip per thread state
+     */
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(4)
+    public void balancedWrite(Flip flip) {
+        write(flip);
+    }
+
+    /**
+     * Readers of the balanced group.
+     * @return the verification
+     */
+    @Benchmark
+    @Group("balanced")
+    @GroupThreads(4)
+    public CwdVerification balancedRead() {
+        return changeDir.verify();
+    }
+
+    /**
+     * Writers of the write heavy group.
+     * @param flip per thread state
+     */
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(7)
+    public void writeHeavyWrite(Flip flip) {
+        write(flip);
+    }
+
+    /**
+     * Reader of the write heavy group.
+     * @return the verification
+     */
+    @Benchmark
+    @Group("writeHeavy")
+    @GroupThreads(1)
+    public CwdVerification writeHeavyRead() {
+        return changeDir.verify();
+    }
+
+    /**
+     * Writers only.
+     * @param flip per thread state
+     */
+    @Benchmark
+    @Group("writeOnly")
+    @GroupThreads(8)
+    public void writeOnly(Flip flip) {
+        write(flip);
+    }
+
+    private void write(Flip flip) {
+        changeDir.changeDir(flip.next() ? dirs.firstString() : dirs.secondString());
+    }
+
+    private static LockStrategy strategyName(String name) {
+        return "readwrite".equals(name) ? LockStrategy.READ_WRITE
+                : "singlewriter".equals(name) ? LockStrategy.SINGLE_WRITER
+                : LockStrategy.valueOf(name.toUpperCase(Locale.ROOT));
+    }
+}
@@ -0,0 +1,114 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.NativeChangeDir;
+import io.github.zebalu.badidea.chdir.native_impl.ffm.FdCacheChangeDir;
+import io.github.zebalu.badidea.chdir.native_impl.ffm.FfmChangeDir;
+import io.github.zebalu.badidea.chdir.native_impl.jna.JnaNativeChDir;
+import io.github.zebalu.badidea.chdir.native_impl.jni.JniNativeChangeDir;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Measures each {@link NativeChangeDir} backend on its own, without the Java side bookkeeping of
+ * {@link io.github.zebalu.badidea.chdir.ChangeDir}. The <code>none</code> backend is the baseline: it does nothing, just
+ * like the fallback the loader uses when no backend is on the class path. <code>jna</code> is JNA's direct mapping (the
+ * default), <code>jnaproxy</code> is its interface mapping. <code>ffmcritical</code> is FFM with critical downcalls and
+ * heap segment paths (see {@link io.github.zebalu.badidea.chdir.ChdirConfig#ffmCritical()}).
+ * <p>
+ * The JNI backend needs its native library built for the current platform (see the <code>cpp</code> folder), otherwise
+ * its trial fails during setup.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class NativeChangeDirBenchmark {
+
+    /** The backend to measure. */
+    @Param({"ffm", "ffmcritical", "fdcache", "jna", "jnaproxy", "jni", "none"})
+    public String backend;
+
+    private NativeChangeDir nativeChangeDir;
+    private BenchmarkDirs dirs;
+    private boolean flip;
+
+    /**
+     * Creates the directories and the selected backend, and calls it once, so library loading is not measured.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        dirs = BenchmarkDirs.create();
+        nativeChangeDir = Backend.valueOf(backend.toUpperCase(Locale.ROOT)).create();
+        nativeChangeDir.changeDir(dirs.firstString());
+    }
+
+    /**
+     * Restores the original working directory and removes the created directories.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        nativeChangeDir.changeDir(dirs.original());
+        dirs.delete();
+    }
+
+    /**
+     * Changes the native directory only.
+     * @return the result of the native call
+     */
+    @Benchmark
+    public boolean changeDir() {
+        flip = !flip;
+        return nativeChangeDir.changeDir(flip ? dirs.secondString() : dirs.firstString());
+    }
+
+    private enum Backend {
+        FFM(() -> new FfmChangeDir(false)),
+        FFMCRITICAL(() -> new FfmChangeDir(true)),
+        FDCACHE(() -> new FdCacheChangeDir(16)),
+        JNA(JnaNativeChDir::new),
+        JNAPROXY(() -> new JnaNativeChDir(false)),
+        JNI(JniNativeChangeDir::new),
+        NONE(NoNativeChangeDir::new);
+
+        private final Supplier<NativeChangeDir> factory;
+
+        Backend(Supplier<NativeChangeDir> factory) {
+            this.factory = factory;
+        }
+
+        NativeChangeDir create() {
+            return factory.get();
+        }
+    }
+
+    private static final class NoNativeChangeDir implements NativeChangeDir {
+        @Override
+        public boolean changeDir(String dir) {
+            return false;
+        }
+
+        @Override
+        public int preference() {
+            return 0;
+        }
+    }
+}
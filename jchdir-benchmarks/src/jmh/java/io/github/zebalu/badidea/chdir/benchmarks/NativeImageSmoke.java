@@ -0,0 +1,69 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.CwdVerification;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Smoke check for native images: changes directory with the backend pinned by the caller (the
+ * <code>nativeImageSmoke</code> gradle task pins <code>ffm</code>, <code>nativeImageSmokeFdCache</code> pins
+ * <code>fdcache</code>), and checks that {@link File}, {@link Path}, the <code>user.dir</code> property and the native
+ * working directory all follow. Both directories are visited twice, so a caching backend also serves from its cache.
+ * It fails (exits with 1) otherwise.
+ * <p>
+ * It runs on the JVM just as well, so a failure can be compared between the two.
+ */
+public final class NativeImageSmoke {
+
+    private NativeImageSmoke() {
+    }
+
+    /**
+     * Runs the smoke check.
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        BenchmarkDirs dirs = BenchmarkDirs.create();
+        ChangeDir changeDir = ChangeDir.getInstance();
+        boolean failed = false;
+        try {
+            String[] visits = {dirs.firstString(), dirs.secondString(), dirs.firstString(), dirs.secondString()};
+            for (String dir : visits) {
+                changeDir.changeDir(dir);
+                CwdVerification verification = changeDir.verify();
+                String file = new File("x").getAbsoluteFile().getParent();
+                String path = Paths.get("x").toAbsolutePath().getParent().toString();
+                System.out.println(verification + ", File: " + file + ", Path: " + path);
+                if (!verification.isConsistent() || verification.nativeDir() == null || !dir.equals(file)
+                        || !dir.equals(path)) {
+                    failed = true;
+                }
+            }
+        } finally {
+            changeDir.changeDir(dirs.original());
+            dirs.delete();
+        }
+        if (failed) {
+            System.err.println("Working directory did not follow the change");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,96 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.NativeChangeDir;
+import io.github.zebalu.badidea.chdir.native_impl.ffm.FfmChangeDir;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Soak check for native memory: switches directories through {@link FfmChangeDir} many times, and watches the
+ * <code>Other</code> category of Native Memory Tracking (that is where FFM allocations are accounted). It fails (exits
+ * with 1) if the committed memory grows more than the allowed amount after warm-up.
+ * <p>
+ * Needs <code>-XX:NativeMemoryTracking=summary</code>, the <code>soak</code> gradle task sets it up.
+ * Arguments (optional): number of switches (default 20 000 000), allowed growth in KB (default 1024).
+ */
+public final class NativeMemorySoak {
+
+    private static final Pattern OTHER_COMMITTED = Pattern.compile("-\\s+Other \\(reserved=\\d+KB, committed=(\\d+)KB\\)");
+    private static final int WARM_UP = 100_000;
+    private static final int REPORT_EVERY = 1_000_000;
+
+    private NativeMemorySoak() {
+    }
+
+    /**
+     * Runs the soak check.
+     * @param args optional number of switches and allowed growth in KB
+     * @throws JMException in case NMT can not be queried
+     */
+    public static void main(String[] args) throws JMException {
+        long switches = args.length > 0 ? Long.parseLong(args[0]) : 20_000_000L;
+        long allowedGrowthKb = args.length > 1 ? Long.parseLong(args[1]) : 1024L;
+        BenchmarkDirs dirs = BenchmarkDirs.create();
+        NativeChangeDir nativeChangeDir = new FfmChangeDir();
+        try {
+            for (int i = 0; i < WARM_UP; ++i) {
+                switchOnce(nativeChangeDir, dirs, i);
+            }
+            long baseline = otherCommittedKb();
+            long maxGrowth = 0L;
+            for (long i = 0; i < switches; ++i) {
+                switchOnce(nativeChangeDir, dirs, i);
+                if ((i + 1) % REPORT_EVERY == 0) {
+                    long growth = otherCommittedKb() - baseline;
+                    maxGrowth = Math.max(maxGrowth, growth);
+                    System.out.printf("%,d switches, native (Other) growth: %d KB%n", i + 1, growth);
+                }
+            }
+            System.out.printf("max growth: %d KB, allowed: %d KB%n", maxGrowth, allowedGrowthKb);
+            if (maxGrowth > allowedGrowthKb) {
+                System.err.println("Native memory is growing with directory switches");
+                System.exit(1);
+            }
+        } finally {
+            nativeChangeDir.changeDir(dirs.original());
+            dirs.delete();
+        }
+    }
+
+    private static void switchOnce(NativeChangeDir nativeChangeDir, BenchmarkDirs dirs, long i) {
+        if (!nativeChangeDir.changeDir((i & 1) == 0 ? dirs.firstString() : dirs.secondString())) {
+            throw new IllegalStateException("Native change dir has failed");
+        }
+    }
+
+    private static long otherCommittedKb() throws JMException {
+        String summary = (String) ManagementFactory.getPlatformMBeanServer().invoke(
+                new ObjectName("com.sun.management:type=DiagnosticCommand"), "vmNativeMemory",
+                new Object[]{new String[]{"summary"}}, new String[]{String[].class.getName()});
+        Matcher matcher = OTHER_COMMITTED.matcher(summary);
+        if (!matcher.find()) {
+            throw new IllegalStateException("No NMT data, start the JVM with -XX:NativeMemoryTracking=summary\n" + summary);
+        }
+        return Long.parseLong(matcher.group(1));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.spawn.PosixSpawn;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Starts a child (<code>true</code>) in one of two directories and waits for it, three ways: with
+ * {@link ProcessBuilder#directory(java.io.File)}, with {@link ChangeDir#changeDir(String)} followed by a plain
+ * {@link ProcessBuilder#start()}, and with {@link PosixSpawn}. The child's output is inherited, so no pipes are measured.
+ * Run it with more threads (<code>-t</code>) to see the global lock of the second way.
+ * <p>
+ * Linux only, elsewhere {@link PosixSpawn} falls back to {@link ProcessBuilder}.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+public class SpawnBenchmark {
+
+    private ChangeDir changeDir;
+    private BenchmarkDirs dirs;
+
+    /**
+     * Creates the directories and initialises the {@link ChangeDir} instance.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        dirs = BenchmarkDirs.create();
+        changeDir = ChangeDir.getInstance();
+    }
+
+    /**
+     * Restores the original working directory and removes the created directories.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        changeDir.changeDir(dirs.original());
+        dirs.delete();
+    }
+
+    /**
+     * Per thread flip, so threads do not share a field.
+     */
+    @State(Scope.Thread)
+    public static class Flip {
+        private boolean value;
+
+        boolean next() {
+            value = !value;
+            return value;
+        }
+    }
+
+    /**
+     * Starts the child with {@link ProcessBuilder#directory(java.io.File)}.
+     * @param flip per thread state
+     * @return the exit code
+     * @throws IOException if the child can not be started
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public int processBuilderDirectory(Flip flip) throws IOException, InterruptedException {
+        return command().directory(flip.next() ? dirs.firstFile() : dirs.secondFile()).start().waitFor();
+    }
+
+    /**
+     * Changes the global working directory, then starts the child in it.
+     * @param flip per thread state
+     * @return the exit code
+     * @throws IOException if the child can not be started
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public int changeDirThenStart(Flip flip) throws IOException, InterruptedException {
+        changeDir.changeDir(flip.next() ? dirs.firstString() : dirs.secondString());
+        return command().start().waitFor();
+    }
+
+    /**
+     * Starts the child with {@link PosixSpawn}.
+     * @param flip per thread state
+     * @return the exit code
+     * @throws IOException if the child can not be started
+     * @throws InterruptedException if interrupted while waiting
+     */
+    @Benchmark
+    public int posixSpawn(Flip flip) throws IOException, InterruptedException {
+        return PosixSpawn.start(command().directory(flip.next() ? dirs.firstFile() : dirs.secondFile())).waitFor();
+    }
+
+    private static ProcessBuilder command() {
+        return new ProcessBuilder("true").inheritIO();
+    }
+}
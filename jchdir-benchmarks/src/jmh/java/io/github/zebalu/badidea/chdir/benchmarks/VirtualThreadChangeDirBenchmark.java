@@ -0,0 +1,99 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.ChdirConfig;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of {@link ChangeDir} called from many threads at once: every invocation starts {@value #TASKS} tasks, that
+ * each change directory once, on virtual threads or on a fixed pool of platform threads, and waits for all of them.
+ * With <code>offloadThreads</code> above 0, virtual threads hand the change over to that many platform threads (see
+ * {@link ChdirConfig#offloadThreads()}). As the configuration is read once per JVM, every combination runs in its own
+ * fork.
+ */
+@State(Scope.Benchmark)
+@Warmup(iterations = 3, time = 2, timeUnit = TimeUnit.SECONDS)
+@Measurement(iterations = 5, time = 2, timeUnit = TimeUnit.SECONDS)
+@Fork(2)
+@OperationsPerInvocation(VirtualThreadChangeDirBenchmark.TASKS)
+public class VirtualThreadChangeDirBenchmark {
+
+    /** Number of tasks per invocation. */
+    static final int TASKS = 1_000;
+
+    /** The kind of threads calling {@link ChangeDir}: <code>virtual</code> or <code>platform</code>. */
+    @Param({"virtual", "platform"})
+    public String threads;
+
+    /** Value of {@link ChdirConfig#offloadThreads()}. */
+    @Param({"0", "2"})
+    public int offloadThreads;
+
+    private ChangeDir changeDir;
+    private BenchmarkDirs dirs;
+    private ExecutorService executor;
+
+    /**
+     * Sets up the configuration before the first use of {@link ChangeDir}, and creates the executor.
+     */
+    @Setup(Level.Trial)
+    public void setUp() {
+        System.setProperty(ChdirConfig.JVM_JCHDIR_OFFLOAD_THREADS, Integer.toString(offloadThreads));
+        dirs = BenchmarkDirs.create();
+        changeDir = ChangeDir.getInstance();
+        executor = "virtual".equals(threads)
+                ? Executors.newVirtualThreadPerTaskExecutor()
+                : Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Stops the executor, restores the original working directory and removes the created directories.
+     */
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.close();
+        changeDir.changeDir(dirs.original());
+        dirs.delete();
+    }
+
+    /**
+     * Runs {@value #TASKS} directory changes concurrently.
+     * @throws InterruptedException if interrupted while waiting for the tasks
+     */
+    @Benchmark
+    public void concurrentChangeDir() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(TASKS);
+        for (int i = 0; i < TASKS; ++i) {
+            String target = (i & 1) == 0 ? dirs.firstString() : dirs.secondString();
+            executor.execute(() -> {
+                try {
+                    changeDir.changeDir(target);
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+    }
+}
@@ -0,0 +1,160 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.benchmarks;
+
+import io.github.zebalu.badidea.chdir.ChangeDir;
+import io.github.zebalu.badidea.chdir.DirScope;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ExecutionException;
+import java.util.ArrayList;
+import java.util.stream.Collectors;
+
+/**
+ * Pinning check for virtual threads: starts many virtual threads (default 100 000), each changes directory and enters
+ * and leaves a {@link DirScope}, while a JFR recording captures every <code>jdk.VirtualThreadPinned</code> event (with
+ * no threshold). It fails (exits with 1) if any change fails, or any virtual thread was pinned, however short the pin
+ * was. The pinned events are reported in two groups: with a frame of the library (e.g. {@link ChangeDir}, or the FFM
+ * backend) on the stack, and the others (e.g. of the JDK itself), but both fail the check: nothing else runs on these
+ * threads.
+ * <p>
+ * The <code>pinningCheck</code> gradle task runs it with <code>-Djchdir.offloadThreads=2</code>, and the same native
+ * access as the benchmarks.
+ * Argument (optional): number of virtual threads.
+ */
+public final class VirtualThreadPinningCheck {
+
+    private static final String PINNED = "jdk.VirtualThreadPinned";
+    private static final String LIBRARY_PACKAGE = ChangeDir.class.getPackageName() + ".";
+    private static final String BENCHMARKS_PACKAGE = VirtualThreadPinningCheck.class.getPackageName() + ".";
+
+    private VirtualThreadPinningCheck() {
+    }
+
+    /**
+     * Runs the pinning check.
+     * @param args optional number of virtual threads
+     * @throws InterruptedException if interrupted while waiting for the threads
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threads = args.length > 0 ? Integer.parseInt(args[0]) : 100_000;
+        BenchmarkDirs dirs = BenchmarkDirs.create();
+        ChangeDir changeDir = ChangeDir.getInstance();
+        Path recordingFile = null;
+        try (Recording recording = new Recording()) {
+            recording.enable(PINNED).withThreshold(Duration.ZERO).withStackTrace();
+            recording.start();
+            long start = System.nanoTime();
+            int failures = runAll(changeDir, dirs, threads);
+            long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+            recording.stop();
+            recordingFile = Files.createTempFile("jchdir-pinning", ".jfr");
+            recording.dump(recordingFile);
+            Map<Boolean, List<RecordedEvent>> pinned = RecordingFile.readAllEvents(recordingFile).stream()
+                    .filter(e -> PINNED.equals(e.getEventType().getName()))
+                    .collect(Collectors.partitioningBy(VirtualThreadPinningCheck::inLibrary));
+            List<RecordedEvent> library = pinned.get(true);
+            List<RecordedEvent> other = pinned.get(false);
+            System.out.printf("%,d virtual threads in %,d ms, failures: %d, pinned in library: %d (longest %s), "
+                            + "other pinned events: %d (longest %s)%n", threads, elapsedMillis, failures,
+                    library.size(), longest(library), other.size(), longest(other));
+            library.stream().limit(5).forEach(System.out::println);
+            other.stream().limit(5).forEach(System.out::println);
+            if (failures > 0 || !library.isEmpty() || !other.isEmpty()) {
+                System.exit(1);
+            }
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Can not read the recording", ioe);
+        } finally {
+            changeDir.changeDir(dirs.original());
+            dirs.delete();
+            deleteQuietly(recordingFile);
+        }
+    }
+
+    private static int runAll(ChangeDir changeDir, BenchmarkDirs dirs, int threads) throws InterruptedException {
+        List<Future<?>> futures = new ArrayList<>(threads);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 0; i < threads; ++i) {
+                String target = (i & 1) == 0 ? dirs.firstString() : dirs.secondString();
+                String scoped = (i & 1) == 0 ? dirs.secondString() : dirs.firstString();
+                futures.add(executor.submit(() -> {
+                    changeDir.changeDir(target);
+                    try (DirScope scope = changeDir.push(scoped)) {
+                        return scope.previousDir();
+                    }
+                }));
+            }
+        }
+        int failures = 0;
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (ExecutionException e) {
+                if (failures++ == 0) {
+                    e.getCause().printStackTrace();
+                }
+            }
+        }
+        return failures;
+    }
+
+    private static boolean inLibrary(RecordedEvent event) {
+        RecordedStackTrace stackTrace = event.getStackTrace();
+        if (stackTrace == null) {
+            return false;
+        }
+        for (RecordedFrame frame : stackTrace.getFrames()) {
+            if (frame.isJavaFrame()) {
+                String type = frame.getMethod().getType().getName();
+                if (type.startsWith(LIBRARY_PACKAGE) && !type.startsWith(BENCHMARKS_PACKAGE)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static Duration longest(List<RecordedEvent> events) {
+        return events.stream().map(RecordedEvent::getDuration).max(Duration::compareTo).orElse(Duration.ZERO);
+    }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ioe) {
+            System.err.println("Can not delete " + file + ": " + ioe.getMessage());
+        }
+    }
+}
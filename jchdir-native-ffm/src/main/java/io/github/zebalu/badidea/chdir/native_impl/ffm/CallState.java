@@ -0,0 +1,61 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.ffm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemoryLayout;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.StructLayout;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Per-thread native memory, where downcalls linked with {@link #CAPTURE_ERRNO} save <code>errno</code> right after
+ * the call (before the JVM could overwrite it).
+ * <p>
+ * It is public only to be shared with {@link io.github.zebalu.badidea.chdir.spawn}, the package is not exported by the
+ * module, it is not part of the API.
+ */
+public final class CallState {
+    /** Linker option to capture <code>errno</code>. The linked handle gets a leading {@link MemorySegment} parameter. */
+    public static final Linker.Option CAPTURE_ERRNO = Linker.Option.captureCallState("errno");
+
+    private static final StructLayout LAYOUT = Linker.Option.captureStateLayout();
+    private static final VarHandle ERRNO = LAYOUT.varHandle(MemoryLayout.PathElement.groupElement("errno"));
+    private static final ThreadLocal<MemorySegment> STATES = ThreadLocal.withInitial(() -> Arena.ofAuto().allocate(LAYOUT));
+
+    private CallState() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * The capture segment of the calling thread.
+     * @return the segment to pass to a capturing downcall
+     */
+    public static MemorySegment current() {
+        return STATES.get();
+    }
+
+    /**
+     * Reads the captured errno.
+     * @param state the segment passed to the downcall
+     * @return the errno saved after the call
+     */
+    public static int errno(MemorySegment state) {
+        return (int) ERRNO.get(state, 0L);
+    }
+}
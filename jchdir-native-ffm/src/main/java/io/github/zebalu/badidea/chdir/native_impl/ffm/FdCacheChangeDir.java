@@ -0,0 +1,440 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.ffm;
+
+import io.github.zebalu.badidea.chdir.ChdirConfig;
+import io.github.zebalu.badidea.chdir.NativeResult;
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+import io.github.zebalu.badidea.chdir.util.OsUtil;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Predicate;
+
+/**
+ * Linux only backend, that keeps the directories it has visited open (<code>open(dir, O_PATH|O_DIRECTORY)</code>), and
+ * switches to them with <code>fchdir(fd)</code>. A repeated switch does not need a kernel path walk, nor a new C string.
+ * <p>
+ * The handles are kept in a least recently used cache of {@link ChdirConfig#fdCacheSize()} entries. Evicted handles
+ * are closed. With a cache size of <code>0</code>, or on other systems, it works just like {@link FfmChangeDir}.
+ * <p>
+ * A handle follows the directory it was opened for, even if that directory is renamed or deleted. So the parent of
+ * every cached directory is watched with <code>inotify</code>, and before a cached handle is used, the pending events
+ * are read (one non-blocking <code>read</code>, no path walk). A handle is closed, as soon as its directory is deleted
+ * or renamed, or its parent is. Only the direct parents are watched: renaming a grand parent, or retargeting a
+ * symbolic link in the middle of the path is not noticed. Directories, that are symbolic links themselves, are not
+ * cached. If <code>inotify</code> is not available, nothing is cached.
+ * <p>
+ * Its preference depends on the configuration, so it has no {@link io.github.zebalu.badidea.chdir.NativePreference}:
+ * the loader creates it (cheaply, native access is lazy) to ask. Pin it with <code>backend=fdcache</code> to skip that.
+ */
+public class FdCacheChangeDir extends FfmChangeDir {
+
+    private static final int O_CLOEXEC = 0x80000;
+    private static final int O_PATH = 0x200000;
+    private static final int O_DIRECTORY = isArm() ? 0x4000 : 0x10000;
+    private static final int O_NOFOLLOW = isArm() ? 0x8000 : 0x20000;
+    private static final int IN_NONBLOCK = 0x800;
+    private static final int IN_CLOEXEC = 0x80000;
+    private static final int IN_MOVED_FROM = 0x40;
+    private static final int IN_DELETE = 0x200;
+    private static final int IN_DELETE_SELF = 0x400;
+    private static final int IN_MOVE_SELF = 0x800;
+    private static final int IN_Q_OVERFLOW = 0x4000;
+    private static final int IN_IGNORED = 0x8000;
+    private static final int IN_ONLYDIR = 0x1000000;
+    private static final int WATCH_MASK = IN_MOVED_FROM | IN_DELETE | IN_DELETE_SELF | IN_MOVE_SELF | IN_ONLYDIR;
+    // struct inotify_event: int wd, uint32_t mask, uint32_t cookie, uint32_t len, char name[len]
+    private static final long EVENT_HEADER_SIZE = 16;
+    private static final long EVENT_BUFFER_SIZE = 4096;
+
+    private static final LazyInit<MethodHandle> OPEN_HANDLE = new LazyInit<>(() -> {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find("open").orElseThrow();
+        return linker.downcallHandle(methodAddress,
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT),
+                Linker.Option.firstVariadicArg(2));
+    });
+
+    private static final LazyInit<MethodHandle> FCHDIR_HANDLE = new LazyInit<>(() -> downcallIntToInt("fchdir"));
+    private static final LazyInit<MethodHandle> CLOSE_HANDLE = new LazyInit<>(() -> downcallIntToInt("close"));
+    private static final LazyInit<MethodHandle> INOTIFY_INIT_HANDLE = new LazyInit<>(() -> downcallIntToInt("inotify_init1"));
+    private static final LazyInit<MethodHandle> INOTIFY_ADD_WATCH_HANDLE = new LazyInit<>(() -> {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find("inotify_add_watch").orElseThrow();
+        return linker.downcallHandle(methodAddress,
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT));
+    });
+    private static final LazyInit<MethodHandle> INOTIFY_RM_WATCH_HANDLE = new LazyInit<>(() -> {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find("inotify_rm_watch").orElseThrow();
+        return linker.downcallHandle(methodAddress,
+                FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    });
+    private static final LazyInit<MethodHandle> READ_HANDLE = new LazyInit<>(() -> {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find("read").orElseThrow();
+        return linker.downcallHandle(methodAddress,
+                FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG));
+    });
+
+    private final int capacity;
+    // not synchronized: native calls in a synchronized block pin the virtual thread (before JDK 24)
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, Handle> descriptors;
+    private final Map<String, Watch> watchesByParent = new HashMap<>();
+    private final Map<Integer, Watch> watchesByDescriptor = new HashMap<>();
+    private int notifyFd = -1;
+    private MemorySegment eventBuffer = MemorySegment.NULL;
+
+    /**
+     * Creates an instance with the cache size of {@link ChdirConfig#fdCacheSize()}.
+     */
+    public FdCacheChangeDir() {
+        this(ChdirConfig.getInstance().fdCacheSize());
+    }
+
+    /**
+     * Creates an instance with the given cache size.
+     * @param capacity the maximum number of open directory handles, <code>0</code> turns the cache off.
+     * @throws IllegalArgumentException in case capacity is negative
+     */
+    public FdCacheChangeDir(int capacity) {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Cache size can not be negative: " + capacity);
+        }
+        this.capacity = OsUtil.isLinux() ? capacity : 0;
+        this.descriptors = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Handle> eldest) {
+                if (size() > FdCacheChangeDir.this.capacity) {
+                    release(eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Changes to the cached handle of the directory, opens and caches one if there is none yet, or if the cached one
+     * was closed because its directory was deleted or renamed. Falls back to <code>chdir</code> if the directory can
+     * not be opened or watched, so failures report the <code>errno</code> of <code>chdir</code>.
+     * @param dir the absolute path of a directory.
+     * @return the result of the change.
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public NativeResult changeDirWithResult(String dir) {
+        if (capacity == 0) {
+            return super.changeDirWithResult(dir);
+        }
+        lock.lock();
+        try {
+            if (!drainEvents()) {
+                return super.changeDirWithResult(dir);
+            }
+            Handle handle = descriptors.get(dir);
+            if (handle == null) {
+                handle = open(dir);
+                if (handle == null) {
+                    return super.changeDirWithResult(dir);
+                }
+                descriptors.put(dir, handle);
+            }
+            if (0 == fchdir(handle.fd)) {
+                return NativeResult.success();
+            }
+            descriptors.remove(dir);
+            release(handle);
+            return super.changeDirWithResult(dir);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Uses the cached handle of the directory (see {@link #changeDirWithResult(String)}), the prepared C string is only
+     * used, if the cache is disabled.
+     * @param dir the absolute path of a directory.
+     * @param prepared the result of {@link #prepare(String)}
+     * @return the result of the change.
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public NativeResult changeDirPrepared(String dir, Object prepared) {
+        if (capacity == 0) {
+            return super.changeDirPrepared(dir, prepared);
+        }
+        return changeDirWithResult(dir);
+    }
+
+    /**
+     * Closes and forgets the cached handle of a directory, if there is any.
+     * @param dir the absolute path of the directory
+     */
+    public void invalidate(String dir) {
+        lock.lock();
+        try {
+            Handle handle = descriptors.remove(dir);
+            if (handle != null) {
+                release(handle);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes and forgets all cached handles, and stops watching their parents.
+     */
+    public void clear() {
+        lock.lock();
+        try {
+            descriptors.values().forEach(handle -> close(handle.fd));
+            descriptors.clear();
+            watchesByParent.clear();
+            watchesByDescriptor.clear();
+            if (notifyFd >= 0) {
+                close(notifyFd);
+                notifyFd = -1;
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Closes all cached handles and the <code>inotify</code> descriptor, see {@link #clear()}. They are opened again
+     * on the next change.
+     */
+    @Override
+    public void reset() {
+        clear();
+    }
+
+    /**
+     * Returns 23 if the cache is turned on, so it is selected over {@link FfmChangeDir}, 21 otherwise.
+     *
+     * @return 23 with a cache, 21 without
+     */
+    @Override
+    public int preference() {
+        return capacity > 0 ? 23 : 21;
+    }
+
+    /**
+     * Reads the pending <code>inotify</code> events, and closes the handles of the deleted and renamed directories.
+     * Opens the <code>inotify</code> descriptor first, if needed.
+     * @return <code>false</code> if <code>inotify</code> is not available
+     */
+    private boolean drainEvents() {
+        if (notifyFd < 0) {
+            notifyFd = inotifyInit();
+            if (notifyFd < 0) {
+                return false;
+            }
+            eventBuffer = Arena.ofAuto().allocate(EVENT_BUFFER_SIZE, 4);
+        }
+        long read;
+        while ((read = read(notifyFd, eventBuffer)) > 0) {
+            for (long offset = 0; offset < read; ) {
+                int wd = eventBuffer.get(ValueLayout.JAVA_INT, offset);
+                int mask = eventBuffer.get(ValueLayout.JAVA_INT, offset + 4);
+                int length = eventBuffer.get(ValueLayout.JAVA_INT, offset + 12);
+                if ((mask & IN_Q_OVERFLOW) != 0) {
+                    dropWhere(handle -> true);
+                } else {
+                    Watch watch = watchesByDescriptor.get(wd);
+                    if (watch != null) {
+                        if ((mask & (IN_DELETE_SELF | IN_MOVE_SELF | IN_IGNORED)) != 0) {
+                            dropWhere(handle -> handle.watch == watch);
+                        } else if (length > 0) {
+                            String name = eventBuffer.getString(offset + EVENT_HEADER_SIZE);
+                            dropWhere(handle -> handle.watch == watch && handle.name.equals(name));
+                        }
+                    }
+                }
+                offset += EVENT_HEADER_SIZE + length;
+            }
+        }
+        return true;
+    }
+
+    private void dropWhere(Predicate<Handle> gone) {
+        Iterator<Handle> iterator = descriptors.values().iterator();
+        while (iterator.hasNext()) {
+            Handle handle = iterator.next();
+            if (gone.test(handle)) {
+                iterator.remove();
+                release(handle);
+            }
+        }
+    }
+
+    /**
+     * Opens the directory, and watches its parent. The parent is watched first, so a deletion right after the open is
+     * reported.
+     * @return the handle, or <code>null</code> if the directory can not be cached
+     */
+    private Handle open(String dir) {
+        int separator = dir.lastIndexOf('/');
+        String name = dir.substring(separator + 1);
+        if (separator < 0 || name.isEmpty() || ".".equals(name) || "..".equals(name)) {
+            return null;
+        }
+        String parent = separator == 0 ? "/" : dir.substring(0, separator);
+        Watch watch = watch(parent);
+        if (watch == null) {
+            return null;
+        }
+        int fd = open(dir, O_PATH | O_DIRECTORY | O_NOFOLLOW | O_CLOEXEC);
+        if (fd < 0) {
+            unwatch(watch);
+            return null;
+        }
+        return new Handle(fd, watch, name);
+    }
+
+    private Watch watch(String parent) {
+        Watch watch = watchesByParent.get(parent);
+        if (watch == null) {
+            int wd = inotifyAddWatch(notifyFd, parent, WATCH_MASK);
+            if (wd < 0) {
+                return null;
+            }
+            watch = watchesByDescriptor.get(wd);
+            if (watch == null) {
+                watch = new Watch(wd);
+                watchesByDescriptor.put(wd, watch);
+            }
+            watchesByParent.put(parent, watch);
+        }
+        ++watch.users;
+        return watch;
+    }
+
+    private void release(Handle handle) {
+        close(handle.fd);
+        unwatch(handle.watch);
+    }
+
+    private void unwatch(Watch watch) {
+        if (--watch.users == 0 && watchesByDescriptor.remove(watch.wd) != null) {
+            watchesByParent.values().removeIf(other -> other == watch);
+            inotifyRmWatch(notifyFd, watch.wd);
+        }
+    }
+
+    private static int open(String dir, int flags) {
+        try {
+            return (int) OPEN_HANDLE.get().invokeExact(PathBuffer.cString(dir), flags, 0);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static int fchdir(int fd) {
+        try {
+            return (int) FCHDIR_HANDLE.get().invokeExact(fd);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static void close(int fd) {
+        try {
+            int ignored = (int) CLOSE_HANDLE.get().invokeExact(fd);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static int inotifyInit() {
+        try {
+            return (int) INOTIFY_INIT_HANDLE.get().invokeExact(IN_NONBLOCK | IN_CLOEXEC);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static int inotifyAddWatch(int notifyFd, String path, int mask) {
+        try {
+            return (int) INOTIFY_ADD_WATCH_HANDLE.get().invokeExact(notifyFd, PathBuffer.cString(path), mask);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static void inotifyRmWatch(int notifyFd, int wd) {
+        try {
+            int ignored = (int) INOTIFY_RM_WATCH_HANDLE.get().invokeExact(notifyFd, wd);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static long read(int fd, MemorySegment buffer) {
+        try {
+            return (long) READ_HANDLE.get().invokeExact(fd, buffer, buffer.byteSize());
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static MethodHandle downcallIntToInt(String name) {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find(name).orElseThrow();
+        return linker.downcallHandle(methodAddress, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    }
+
+    private static final class Watch {
+        private final int wd;
+        private int users;
+
+        private Watch(int wd) {
+            this.wd = wd;
+        }
+    }
+
+    private static final class Handle {
+        private final int fd;
+        private final Watch watch;
+        private final String name;
+
+        private Handle(int fd, Watch watch, String name) {
+            this.fd = fd;
+            this.watch = watch;
+            this.name = name;
+        }
+    }
+
+    private static boolean isArm() {
+        String arch = System.getProperty("os.arch").toLowerCase(Locale.ROOT);
+        return arch.startsWith("aarch64") || arch.startsWith("arm");
+    }
+}
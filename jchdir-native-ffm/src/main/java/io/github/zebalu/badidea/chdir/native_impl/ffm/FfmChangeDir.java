@@ -1,82 +1,254 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir.native_impl.ffm;
-
-import io.github.zebalu.badidea.chdir.NativeChangeDir;
-import io.github.zebalu.badidea.chdir.util.LazyInit;
-import io.github.zebalu.badidea.chdir.util.OsUtil;
-
-import java.lang.foreign.*;
-import java.lang.invoke.MethodHandle;
-
-/**
- * Accessing platform dependent change directory functionality based on operating system.
- * On Windows it uses <code>msvcrt</code>'s <code>_chdir</code> on other systems it uses
- * <code>libc</code>'s <code>chdir</code> method.
- */
-public class FfmChangeDir implements NativeChangeDir {
-
-    private static final LazyInit<Arena> SHARED_ARENA = new LazyInit<>(Arena::ofAuto);
-
-    private static final LazyInit<MethodHandle> METHOD_HANDLE = new LazyInit<>(() -> {
-        boolean isWindows = OsUtil.isWindows();
-        String name = isWindows ? "_chdir" : "chdir";
-        SymbolLookup lookup;
-        if (isWindows) {
-            lookup = SymbolLookup.libraryLookup("msvcrt", SHARED_ARENA.get());
-        } else {
-            lookup = SymbolLookup.libraryLookup("c", SHARED_ARENA.get());
-        }
-        MemorySegment methodAddress = lookup.find(name).orElseThrow();
-        return Linker.nativeLinker().downcallHandle(methodAddress, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS));
-    });
-
-    /**
-     * Creates an instance of {@link FfmChangeDir} without any explicit initialisation. If any previous instances
-     * have initialised the shared global state, the same state will be used by this instance as well.
-     * Global state is only initialised up on first use.
-     */
-    public FfmChangeDir() {
-    }
-
-    /**
-     * Call's native change dir logic through FFM API.
-     * @param dir the absolute path of a directory.
-     * @return <code>true</code> if change was successful.
-     * @throws IllegalStateException in case underlying native access throws exception.
-     */
-    @Override
-    public boolean changeDir(String dir) {
-        try {
-            MemorySegment cString = SHARED_ARENA.get().allocateFrom(dir);
-            int result = (int) METHOD_HANDLE.get().invokeExact(cString);
-            return 0 == result;
-        } catch (Throwable t) {
-            throw new IllegalStateException("Could not call native function", t);
-        }
-    }
-
-    /**
-     * Returns 22 as preference number
-     *
-     * @return 22 always
-     */
-    @Override
-    public int preference() {
-        return 22;
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.ffm;
+
+import io.github.zebalu.badidea.chdir.ChdirConfig;
+import io.github.zebalu.badidea.chdir.NativeChangeDir;
+import io.github.zebalu.badidea.chdir.NativePreference;
+import io.github.zebalu.badidea.chdir.NativeResult;
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+import io.github.zebalu.badidea.chdir.util.OsUtil;
+
+import java.lang.foreign.*;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * Accessing platform dependent change directory functionality based on operating system.
+ * On Windows it uses <code>msvcrt</code>'s <code>_chdir</code> on other systems it uses
+ * <code>libc</code>'s <code>chdir</code> method.
+ * <p>
+ * The C string of the path is written into a reusable, per-thread native buffer, so repeated calls do not allocate
+ * native memory. A buffer is only replaced if a longer path arrives, and the old one is freed by the GC.
+ * <p>
+ * On Linux threads can be isolated with <code>unshare(CLONE_FS)</code> to have their own working directory.
+ * <p>
+ * <code>getcwd</code> writes into the same per-thread buffer, so reading the native directory does not allocate
+ * native memory either.
+ * <p>
+ * If {@link ChdirConfig#ffmCritical()} is set, <code>chdir</code> is linked as a critical function (found through the
+ * linker's default lookup), and the path is passed as a heap segment, so it is not copied to native memory at all.
+ */
+@NativePreference(22)
+public class FfmChangeDir implements NativeChangeDir {
+
+    private static final LazyInit<Arena> SHARED_ARENA = new LazyInit<>(Arena::ofAuto);
+    private static final int CLONE_FS = 0x00000200;
+    private static final int ERANGE = 34;
+    private static final long CWD_START_SIZE = 4096L;
+    private static final long CWD_MAX_SIZE = 1L << 20;
+
+    private static final LazyInit<MethodHandle> METHOD_HANDLE = new LazyInit<>(() -> {
+        boolean isWindows = OsUtil.isWindows();
+        String name = isWindows ? "_chdir" : "chdir";
+        SymbolLookup lookup;
+        if (isWindows) {
+            lookup = SymbolLookup.libraryLookup("msvcrt", SHARED_ARENA.get());
+        } else {
+            lookup = SymbolLookup.libraryLookup("c", SHARED_ARENA.get());
+        }
+        MemorySegment methodAddress = lookup.find(name).orElseThrow();
+        return Linker.nativeLinker().downcallHandle(methodAddress, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS),
+                CallState.CAPTURE_ERRNO);
+    });
+
+    private static final LazyInit<MethodHandle> CRITICAL_HANDLE = new LazyInit<>(() -> {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find(OsUtil.isWindows() ? "_chdir" : "chdir").orElseThrow();
+        return linker.downcallHandle(methodAddress, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS),
+                Linker.Option.critical(true), CallState.CAPTURE_ERRNO);
+    });
+
+    private static final LazyInit<MethodHandle> GETCWD_HANDLE = new LazyInit<>(() -> {
+        boolean isWindows = OsUtil.isWindows();
+        SymbolLookup lookup = SymbolLookup.libraryLookup(isWindows ? "msvcrt" : "c", SHARED_ARENA.get());
+        MemorySegment methodAddress = lookup.find(isWindows ? "_getcwd" : "getcwd").orElseThrow();
+        FunctionDescriptor descriptor = FunctionDescriptor.of(ValueLayout.ADDRESS, ValueLayout.ADDRESS,
+                isWindows ? ValueLayout.JAVA_INT : ValueLayout.JAVA_LONG);
+        return Linker.nativeLinker().downcallHandle(methodAddress, descriptor, CallState.CAPTURE_ERRNO);
+    });
+
+    private static final LazyInit<MethodHandle> UNSHARE_HANDLE = new LazyInit<>(() -> {
+        Linker linker = Linker.nativeLinker();
+        MemorySegment methodAddress = linker.defaultLookup().find("unshare").orElseThrow();
+        return linker.downcallHandle(methodAddress, FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    });
+
+    private final boolean critical;
+    private volatile HeapCString lastPath;
+
+    /**
+     * Creates an instance of {@link FfmChangeDir} without any explicit initialisation. If any previous instances
+     * have initialised the shared global state, the same state will be used by this instance as well.
+     * Global state is only initialised up on first use. Critical downcalls are used if
+     * {@link ChdirConfig#ffmCritical()} is set.
+     */
+    public FfmChangeDir() {
+        this(ChdirConfig.getInstance().ffmCritical());
+    }
+
+    /**
+     * Creates an instance of {@link FfmChangeDir}, like {@link #FfmChangeDir()}, but with an explicit mode.
+     * @param critical <code>true</code> to link <code>chdir</code> as a critical function, and pass the path as a heap
+     *                 segment
+     */
+    public FfmChangeDir(boolean critical) {
+        this.critical = critical;
+    }
+
+    /**
+     * Call's native change dir logic through FFM API.
+     * @param dir the absolute path of a directory.
+     * @return <code>true</code> if change was successful.
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public boolean changeDir(String dir) {
+        return changeDirWithResult(dir).isSuccess();
+    }
+
+    /**
+     * Call's native change dir logic through FFM API, and captures <code>errno</code> on failure.
+     * @param dir the absolute path of a directory.
+     * @return the result of the change.
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public NativeResult changeDirWithResult(String dir) {
+        try {
+            MemorySegment state = CallState.current();
+            int result;
+            if (critical) {
+                HeapCString cString = HeapCString.of(lastPath, dir);
+                lastPath = cString;
+                result = (int) CRITICAL_HANDLE.get().invokeExact(state, cString.segment());
+            } else {
+                result = (int) METHOD_HANDLE.get().invokeExact(state, PathBuffer.cString(dir));
+            }
+            return 0 == result ? NativeResult.success() : NativeResult.failure(CallState.errno(state));
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Builds the C string of the directory once: a heap segment in critical mode, native memory (freed by the GC with
+     * the {@link io.github.zebalu.badidea.chdir.DirHandle} holding it) otherwise.
+     * @param dir the absolute path of a directory.
+     * @return the C string of the directory, a {@link MemorySegment}
+     */
+    @Override
+    public Object prepare(String dir) {
+        return critical ? HeapCString.encode(dir) : Arena.ofAuto().allocateFrom(dir);
+    }
+
+    /**
+     * Calls native change dir with the C string built by {@link #prepare(String)}, without encoding or copying it.
+     * @param dir the absolute path of a directory.
+     * @param prepared the result of {@link #prepare(String)}
+     * @return the result of the change.
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public NativeResult changeDirPrepared(String dir, Object prepared) {
+        if (!(prepared instanceof MemorySegment cString)) {
+            return changeDirWithResult(dir);
+        }
+        try {
+            MemorySegment state = CallState.current();
+            int result = critical
+                    ? (int) CRITICAL_HANDLE.get().invokeExact(state, cString)
+                    : (int) METHOD_HANDLE.get().invokeExact(state, cString);
+            return 0 == result ? NativeResult.success() : NativeResult.failure(CallState.errno(state));
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Calls <code>getcwd</code> (<code>_getcwd</code> on Windows) into the calling thread's reusable native buffer.
+     * @return the native working directory, <code>null</code> if it can not be read
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public String getCwd() {
+        try {
+            MemorySegment state = CallState.current();
+            for (long size = CWD_START_SIZE; size <= CWD_MAX_SIZE; size <<= 1) {
+                MemorySegment buffer = PathBuffer.ofSize(size);
+                MemorySegment result = OsUtil.isWindows()
+                        ? (MemorySegment) GETCWD_HANDLE.get().invokeExact(state, buffer, (int) size)
+                        : (MemorySegment) GETCWD_HANDLE.get().invokeExact(state, buffer, size);
+                if (result.address() != 0L) {
+                    return buffer.getString(0L);
+                }
+                if (CallState.errno(state) != ERANGE) {
+                    return null;
+                }
+            }
+            return null;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Failures are reported with their <code>errno</code>.
+     * @return true always
+     */
+    @Override
+    public boolean reportsErrno() {
+        return true;
+    }
+
+    /**
+     * Calls <code>unshare(CLONE_FS)</code> on Linux, so the calling thread gets its own working directory.
+     * @return <code>true</code> if the thread is isolated, always <code>false</code> on other systems.
+     * @throws IllegalStateException in case underlying native access throws exception.
+     */
+    @Override
+    public boolean isolateThread() {
+        if (!OsUtil.isLinux()) {
+            return false;
+        }
+        try {
+            int result = (int) UNSHARE_HANDLE.get().invokeExact(CLONE_FS);
+            return 0 == result;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Thread isolation is supported on Linux.
+     *
+     * @return <code>true</code> on Linux, <code>false</code> otherwise
+     */
+    @Override
+    public boolean supportsThreadIsolation() {
+        return OsUtil.isLinux();
+    }
+
+    /**
+     * Returns 22 as preference number
+     *
+     * @return 22 always
+     */
+    @Override
+    public int preference() {
+        return 22;
+    }
+}
@@ -0,0 +1,79 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.ffm;
+
+import java.lang.foreign.MemorySegment;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A path as a NUL terminated UTF-8 C string in a heap segment (for critical downcalls, that may access the heap), and
+ * the one before it. As {@link io.github.zebalu.badidea.chdir.ChangeDir} passes the same String instance for a
+ * directory it has cached or is restoring, switching back and forth between two directories does not encode again.
+ * Instances are immutable, so they can be shared between threads.
+ */
+final class HeapCString {
+    private final String path;
+    private final MemorySegment segment;
+    private final String previousPath;
+    private final MemorySegment previousSegment;
+
+    private HeapCString(String path, MemorySegment segment, String previousPath, MemorySegment previousSegment) {
+        this.path = path;
+        this.segment = segment;
+        this.previousPath = previousPath;
+        this.previousSegment = previousSegment;
+    }
+
+    /**
+     * Returns the C string of the path, reusing the segment of the last or the previous path, if it is the same.
+     * @param last the last C string, can be <code>null</code>
+     * @param path the path to encode
+     * @return the last instance, or a new one, that remembers the last path as its previous one
+     */
+    static HeapCString of(HeapCString last, String path) {
+        if (last == null) {
+            return new HeapCString(path, encode(path), null, null);
+        }
+        if (same(last.path, path)) {
+            return last;
+        }
+        if (same(last.previousPath, path)) {
+            return new HeapCString(last.previousPath, last.previousSegment, last.path, last.segment);
+        }
+        return new HeapCString(path, encode(path), last.path, last.segment);
+    }
+
+    MemorySegment segment() {
+        return segment;
+    }
+
+    /**
+     * Encodes the path into a new heap segment.
+     * @param path the path to encode
+     * @return the NUL terminated UTF-8 bytes as a heap segment
+     */
+    static MemorySegment encode(String path) {
+        byte[] bytes = path.getBytes(StandardCharsets.UTF_8);
+        byte[] cString = new byte[bytes.length + 1];
+        System.arraycopy(bytes, 0, cString, 0, bytes.length);
+        return MemorySegment.ofArray(cString);
+    }
+
+    private static boolean same(String known, String path) {
+        return known == path || (known != null && known.equals(path));
+    }
+}
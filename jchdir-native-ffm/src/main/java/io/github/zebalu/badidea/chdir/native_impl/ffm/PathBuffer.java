@@ -0,0 +1,73 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.ffm;
+
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Native memory holding the last C string of a thread. Its segment comes from its own automatic arena, so it is
+ * freed once the buffer is replaced or its thread is gone.
+ */
+final class PathBuffer {
+    private static final ThreadLocal<PathBuffer> BUFFERS = ThreadLocal.withInitial(PathBuffer::new);
+    private static final int MIN_SIZE = 256;
+
+    private MemorySegment segment = MemorySegment.NULL;
+
+    private PathBuffer() {
+    }
+
+    /**
+     * Writes the string as a NUL terminated UTF-8 C string into the calling thread's buffer. The returned segment is
+     * only valid until the next call on the same thread.
+     *
+     * @param str the string to write
+     * @return the buffer holding the C string
+     */
+    static MemorySegment cString(String str) {
+        return BUFFERS.get().write(str);
+    }
+
+    /**
+     * Returns the calling thread's buffer with at least the given size, for a native function to write into. It is the
+     * same buffer {@link #cString(String)} uses, so it is only valid until the next call on the same thread.
+     *
+     * @param size the minimum size in bytes
+     * @return the buffer
+     */
+    static MemorySegment ofSize(long size) {
+        return BUFFERS.get().ensure(size);
+    }
+
+    private MemorySegment ensure(long required) {
+        if (segment.byteSize() < required) {
+            segment = Arena.ofAuto().allocate(Math.max(MIN_SIZE, Long.highestOneBit(required) << 1));
+        }
+        return segment;
+    }
+
+    private MemorySegment write(String str) {
+        byte[] bytes = str.getBytes(StandardCharsets.UTF_8);
+        ensure(bytes.length + 1L);
+        MemorySegment.copy(bytes, 0, segment, ValueLayout.JAVA_BYTE, 0, bytes.length);
+        segment.set(ValueLayout.JAVA_BYTE, bytes.length, (byte) 0);
+        return segment;
+    }
+}
@@ -1,21 +1,21 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-/**
- * This package contains files to be used by the {@link io.github.zebalu.badidea.chdir.ChangeDir} instance.
- * (Through Service Loader.) No direct access is intended.
- */
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+/**
+ * This package contains files to be used by the {@link io.github.zebalu.badidea.chdir.ChangeDir} instance.
+ * (Through Service Loader.) No direct access is intended.
+ */
 package io.github.zebalu.badidea.chdir.native_impl.ffm;
\ No newline at end of file
@@ -0,0 +1,222 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.spawn;
+
+import io.github.zebalu.badidea.chdir.NativeResult;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.ref.Cleaner;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The parent's end of a pipe to a spawned child. It is closed by {@link #close()}, or by a {@link Cleaner} once it is
+ * unreachable, so abandoned streams do not leak descriptors. Reads and writes go through their own native buffer,
+ * allocated on first use.
+ * <p>
+ * Closing does not wait for a read or write blocked in the kernel (e.g. reading the output of a child that writes
+ * nothing). It only stops new calls, and the descriptor itself is closed once the last call in progress has returned,
+ * so it can not be reused by the system under that call.
+ */
+final class PipeEnd {
+    private static final Cleaner CLEANER = Cleaner.create();
+    private static final int BUFFER_SIZE = 8192;
+
+    private final int fd;
+    private final Cleaner.Cleanable cleanable;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    // one for being open, plus one for every native call in progress, the descriptor is closed when it drops to zero
+    private final AtomicInteger uses = new AtomicInteger(1);
+    private MemorySegment buffer;
+
+    private PipeEnd(int fd) {
+        this.fd = fd;
+        this.cleanable = CLEANER.register(this, new Closer(fd));
+    }
+
+    static InputStream inputStream(int fd) {
+        return new PipeInputStream(new PipeEnd(fd));
+    }
+
+    static OutputStream outputStream(int fd) {
+        return new PipeOutputStream(new PipeEnd(fd));
+    }
+
+    private synchronized int read() throws IOException {
+        MemorySegment segment = buffer();
+        return fill(segment, 1) < 0 ? -1 : segment.get(ValueLayout.JAVA_BYTE, 0L) & 0xff;
+    }
+
+    private synchronized int read(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        if (length == 0) {
+            return 0;
+        }
+        MemorySegment segment = buffer();
+        int read = fill(segment, Math.min(length, BUFFER_SIZE));
+        if (read > 0) {
+            MemorySegment.copy(segment, ValueLayout.JAVA_BYTE, 0L, bytes, offset, read);
+        }
+        return read;
+    }
+
+    private int fill(MemorySegment segment, int length) throws IOException {
+        acquire();
+        long read;
+        try {
+            read = Posix.read(fd, segment, length);
+        } finally {
+            release();
+        }
+        if (read < 0) {
+            throw new IOException("Can not read from process: " + NativeResult.failure((int) -read).describe());
+        }
+        return read == 0 ? -1 : (int) read;
+    }
+
+    private synchronized void write(int b) throws IOException {
+        MemorySegment segment = buffer();
+        segment.set(ValueLayout.JAVA_BYTE, 0L, (byte) b);
+        drain(segment, 1);
+    }
+
+    private synchronized void write(byte[] bytes, int offset, int length) throws IOException {
+        Objects.checkFromIndexSize(offset, length, bytes.length);
+        MemorySegment segment = buffer();
+        while (length > 0) {
+            int chunk = Math.min(length, BUFFER_SIZE);
+            MemorySegment.copy(bytes, offset, segment, ValueLayout.JAVA_BYTE, 0L, chunk);
+            drain(segment, chunk);
+            offset += chunk;
+            length -= chunk;
+        }
+    }
+
+    private void drain(MemorySegment segment, int length) throws IOException {
+        long written = 0L;
+        while (written < length) {
+            acquire();
+            long result;
+            try {
+                result = Posix.write(fd, segment.asSlice(written), length - written);
+            } finally {
+                release();
+            }
+            if (result < 0) {
+                throw new IOException("Can not write to process: " + NativeResult.failure((int) -result).describe());
+            }
+            written += result;
+        }
+    }
+
+    private MemorySegment buffer() {
+        if (buffer == null) {
+            buffer = Arena.ofAuto().allocate(BUFFER_SIZE);
+        }
+        return buffer;
+    }
+
+    private void acquire() throws IOException {
+        int current;
+        do {
+            current = uses.get();
+            if (current == 0) {
+                throw new IOException("Stream closed");
+            }
+        } while (!uses.compareAndSet(current, current + 1));
+        if (closed.get()) {
+            release();
+            throw new IOException("Stream closed");
+        }
+    }
+
+    private void release() {
+        if (uses.decrementAndGet() == 0) {
+            cleanable.clean();
+        }
+    }
+
+    private void close() {
+        if (closed.compareAndSet(false, true)) {
+            release();
+        }
+    }
+
+    private static final class Closer implements Runnable {
+        private final int fd;
+
+        private Closer(int fd) {
+            this.fd = fd;
+        }
+
+        @Override
+        public void run() {
+            Posix.close(fd);
+        }
+    }
+
+    private static final class PipeInputStream extends InputStream {
+        private final PipeEnd end;
+
+        private PipeInputStream(PipeEnd end) {
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return end.read();
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) throws IOException {
+            return end.read(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            end.close();
+        }
+    }
+
+    private static final class PipeOutputStream extends OutputStream {
+        private final PipeEnd end;
+
+        private PipeOutputStream(PipeEnd end) {
+            this.end = end;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            end.write(b);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            end.write(bytes, offset, length);
+        }
+
+        @Override
+        public void close() {
+            end.close();
+        }
+    }
+}
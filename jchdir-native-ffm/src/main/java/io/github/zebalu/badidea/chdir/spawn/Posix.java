@@ -0,0 +1,302 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.spawn;
+
+import io.github.zebalu.badidea.chdir.native_impl.ffm.CallState;
+import io.github.zebalu.badidea.chdir.util.OsUtil;
+
+import java.lang.foreign.FunctionDescriptor;
+import java.lang.foreign.Linker;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.lang.invoke.MethodHandle;
+
+/**
+ * The libc functions the launcher needs, linked once when the class is first used. Functions, that are missing from
+ * the C library (e.g. <code>posix_spawn_file_actions_addchdir_np</code> before glibc 2.29) are <code>null</code>.
+ */
+final class Posix {
+    static final int O_RDONLY = 0;
+    static final int O_WRONLY = 1;
+    static final int O_CREAT = 0x40;
+    static final int O_TRUNC = 0x200;
+    static final int O_APPEND = 0x400;
+    static final int O_CLOEXEC = 0x80000;
+    static final int WNOHANG = 1;
+    static final int SIGKILL = 9;
+    static final int SIGTERM = 15;
+    static final short POSIX_SPAWN_SETSIGMASK = 0x08;
+
+    /** Upper bound of <code>posix_spawn_file_actions_t</code> and <code>posix_spawnattr_t</code> (80 and 336 bytes on glibc). */
+    static final long SPAWN_STRUCT_SIZE = 512L;
+    /** Upper bound of <code>sigset_t</code> (128 bytes on glibc), all zero is the empty set. */
+    static final long SIGSET_SIZE = 128L;
+
+    private static final int EINTR = 4;
+    private static final Linker LINKER = Linker.nativeLinker();
+
+    private static final FunctionDescriptor INT_PTR = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS);
+    private static final FunctionDescriptor INT_PTR_PTR = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS);
+    private static final FunctionDescriptor INT_PTR_INT = FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT);
+
+    private static final MethodHandle FILE_ACTIONS_INIT = link("posix_spawn_file_actions_init", INT_PTR);
+    private static final MethodHandle FILE_ACTIONS_DESTROY = link("posix_spawn_file_actions_destroy", INT_PTR);
+    private static final MethodHandle ADD_CHDIR = link("posix_spawn_file_actions_addchdir_np", INT_PTR_PTR);
+    private static final MethodHandle ADD_DUP2 = link("posix_spawn_file_actions_adddup2",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    private static final MethodHandle ADD_OPEN = link("posix_spawn_file_actions_addopen",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT, ValueLayout.ADDRESS,
+                    ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    private static final MethodHandle ADD_CLOSEFROM = link("posix_spawn_file_actions_addclosefrom_np", INT_PTR_INT);
+    private static final MethodHandle ATTR_INIT = link("posix_spawnattr_init", INT_PTR);
+    private static final MethodHandle ATTR_DESTROY = link("posix_spawnattr_destroy", INT_PTR);
+    private static final MethodHandle ATTR_SET_FLAGS = link("posix_spawnattr_setflags",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_SHORT));
+    private static final MethodHandle ATTR_SET_SIGMASK = link("posix_spawnattr_setsigmask", INT_PTR_PTR);
+    private static final MethodHandle SPAWNP = link("posix_spawnp",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS,
+                    ValueLayout.ADDRESS, ValueLayout.ADDRESS, ValueLayout.ADDRESS));
+    private static final MethodHandle PIPE2 = link("pipe2", INT_PTR_INT, CallState.CAPTURE_ERRNO);
+    private static final MethodHandle READ = link("read",
+            FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG),
+            CallState.CAPTURE_ERRNO);
+    private static final MethodHandle WRITE = link("write",
+            FunctionDescriptor.of(ValueLayout.JAVA_LONG, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_LONG),
+            CallState.CAPTURE_ERRNO);
+    private static final MethodHandle CLOSE = link("close", FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+    private static final MethodHandle WAITPID = link("waitpid",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.ADDRESS, ValueLayout.JAVA_INT),
+            CallState.CAPTURE_ERRNO);
+    private static final MethodHandle KILL = link("kill",
+            FunctionDescriptor.of(ValueLayout.JAVA_INT, ValueLayout.JAVA_INT, ValueLayout.JAVA_INT));
+
+    private Posix() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Tells whether everything, that is needed to spawn in a directory, is available.
+     * @return <code>true</code> on Linux with a C library, that has <code>posix_spawn_file_actions_addchdir_np</code>
+     */
+    static boolean isAvailable() {
+        return OsUtil.isLinux() && ADD_CHDIR != null && SPAWNP != null && PIPE2 != null && WAITPID != null;
+    }
+
+    /**
+     * Tells whether the child can close every inherited descriptor (glibc 2.34+).
+     * @return <code>true</code> if <code>posix_spawn_file_actions_addclosefrom_np</code> is available
+     */
+    static boolean canCloseFrom() {
+        return ADD_CLOSEFROM != null;
+    }
+
+    static int fileActionsInit(MemorySegment actions) {
+        try {
+            return (int) FILE_ACTIONS_INIT.invokeExact(actions);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static void fileActionsDestroy(MemorySegment actions) {
+        try {
+            int ignored = (int) FILE_ACTIONS_DESTROY.invokeExact(actions);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int addChdir(MemorySegment actions, MemorySegment dir) {
+        try {
+            return (int) ADD_CHDIR.invokeExact(actions, dir);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int addDup2(MemorySegment actions, int fd, int newFd) {
+        try {
+            return (int) ADD_DUP2.invokeExact(actions, fd, newFd);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int addOpen(MemorySegment actions, int fd, MemorySegment path, int flags, int mode) {
+        try {
+            return (int) ADD_OPEN.invokeExact(actions, fd, path, flags, mode);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int addCloseFrom(MemorySegment actions, int lowFd) {
+        try {
+            return (int) ADD_CLOSEFROM.invokeExact(actions, lowFd);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int attrInit(MemorySegment attr) {
+        try {
+            return (int) ATTR_INIT.invokeExact(attr);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static void attrDestroy(MemorySegment attr) {
+        try {
+            int ignored = (int) ATTR_DESTROY.invokeExact(attr);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int attrSetFlags(MemorySegment attr, short flags) {
+        try {
+            return (int) ATTR_SET_FLAGS.invokeExact(attr, flags);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static int attrSetSigmask(MemorySegment attr, MemorySegment sigset) {
+        try {
+            return (int) ATTR_SET_SIGMASK.invokeExact(attr, sigset);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Spawns the child.
+     * @return 0, or the error number
+     */
+    static int spawnp(MemorySegment pid, MemorySegment file, MemorySegment actions, MemorySegment attr,
+                      MemorySegment argv, MemorySegment envp) {
+        try {
+            return (int) SPAWNP.invokeExact(pid, file, actions, attr, argv, envp);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Creates a pipe, both ends close on exec.
+     * @param fds two ints, the read and the write end
+     * @return 0, or the errno
+     */
+    static int pipe(MemorySegment fds) {
+        try {
+            MemorySegment state = CallState.current();
+            int result = (int) PIPE2.invokeExact(state, fds, O_CLOEXEC);
+            return result == 0 ? 0 : CallState.errno(state);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Reads, retries on <code>EINTR</code>.
+     * @return the number of bytes read, 0 at the end, or minus the errno
+     */
+    static long read(int fd, MemorySegment buffer, long count) {
+        try {
+            MemorySegment state = CallState.current();
+            while (true) {
+                long result = (long) READ.invokeExact(state, fd, buffer, count);
+                if (result >= 0) {
+                    return result;
+                }
+                int errno = CallState.errno(state);
+                if (errno != EINTR) {
+                    return -errno;
+                }
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Writes, retries on <code>EINTR</code>.
+     * @return the number of bytes written, or minus the errno
+     */
+    static long write(int fd, MemorySegment buffer, long count) {
+        try {
+            MemorySegment state = CallState.current();
+            while (true) {
+                long result = (long) WRITE.invokeExact(state, fd, buffer, count);
+                if (result >= 0) {
+                    return result;
+                }
+                int errno = CallState.errno(state);
+                if (errno != EINTR) {
+                    return -errno;
+                }
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static void close(int fd) {
+        try {
+            int ignored = (int) CLOSE.invokeExact(fd);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    /**
+     * Reaps the child, retries on <code>EINTR</code>.
+     * @param status an int for the wait status
+     * @return the pid, 0 if it is still running (with {@link #WNOHANG}), or minus the errno
+     */
+    static int waitpid(int pid, MemorySegment status, int options) {
+        try {
+            MemorySegment state = CallState.current();
+            while (true) {
+                int result = (int) WAITPID.invokeExact(state, pid, status, options);
+                if (result >= 0) {
+                    return result;
+                }
+                int errno = CallState.errno(state);
+                if (errno != EINTR) {
+                    return -errno;
+                }
+            }
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    static void kill(int pid, int signal) {
+        try {
+            int ignored = (int) KILL.invokeExact(pid, signal);
+        } catch (Throwable t) {
+            throw new IllegalStateException("Could not call native function", t);
+        }
+    }
+
+    private static MethodHandle link(String name, FunctionDescriptor descriptor, Linker.Option... options) {
+        return LINKER.defaultLookup().find(name)
+                .map(address -> LINKER.downcallHandle(address, descriptor, options))
+                .orElse(null);
+    }
+}
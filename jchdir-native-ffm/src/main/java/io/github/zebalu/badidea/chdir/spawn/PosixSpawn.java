@@ -0,0 +1,195 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.spawn;
+
+import io.github.zebalu.badidea.chdir.NativeResult;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Starts processes in any directory with <code>posix_spawn</code>, where the child changes into its directory
+ * (<code>posix_spawn_file_actions_addchdir_np</code>) right before it executes the program. The working directory of the
+ * JVM and of the process is never touched, and {@link io.github.zebalu.badidea.chdir.ChangeDir}'s lock is not taken, so
+ * any number of threads can start children in different directories at the same time.
+ * <p>
+ * It takes a {@link ProcessBuilder}, and honours its command, directory, environment and redirects. Relative paths
+ * (the directory and redirect files) are resolved like {@link Path#toAbsolutePath()} does: against the working directory
+ * set by {@link io.github.zebalu.badidea.chdir.ChangeDir}, or against the one bound by
+ * {@link io.github.zebalu.badidea.chdir.ChangeDir#withScopedDir(String, Runnable)}. Where <code>posix_spawn</code> can not
+ * change directory (not Linux, or glibc before 2.29), {@link ProcessBuilder#start()} is called instead.
+ * <p>
+ * Reading and writing the pipes of the child blocks the calling thread in native code.
+ */
+public final class PosixSpawn {
+
+    private static final int STDIN = 0;
+    private static final int STDOUT = 1;
+    private static final int STDERR = 2;
+
+    private PosixSpawn() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Tells whether processes are started with <code>posix_spawn</code>, or by {@link ProcessBuilder#start()}.
+     * @return <code>true</code> if <code>posix_spawn</code> can change directory on this platform
+     */
+    public static boolean isSupported() {
+        return Posix.isAvailable();
+    }
+
+    /**
+     * Starts a process, as {@link ProcessBuilder#start()} would, but without changing any working directory.
+     * @param builder the command, directory, environment and redirects of the process
+     * @return the started process
+     * @throws IOException if the process can not be started, e.g. the program or the directory is missing
+     */
+    public static Process start(ProcessBuilder builder) throws IOException {
+        if (!isSupported()) {
+            return builder.start();
+        }
+        List<String> command = builder.command();
+        if (command.isEmpty()) {
+            throw new IndexOutOfBoundsException("Command is empty");
+        }
+        Path dir = builder.directory() == null ? Path.of("").toAbsolutePath() : builder.directory().toPath().toAbsolutePath();
+        List<Integer> parentEnds = new ArrayList<>(3);
+        List<Integer> childEnds = new ArrayList<>(3);
+        boolean started = false;
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment actions = arena.allocate(Posix.SPAWN_STRUCT_SIZE);
+            MemorySegment attr = arena.allocate(Posix.SPAWN_STRUCT_SIZE);
+            check(Posix.fileActionsInit(actions), "posix_spawn_file_actions_init");
+            try {
+                check(Posix.attrInit(attr), "posix_spawnattr_init");
+                try {
+                    // the calling thread's blocked signals must not be inherited
+                    check(Posix.attrSetSigmask(attr, arena.allocate(Posix.SIGSET_SIZE)), "posix_spawnattr_setsigmask");
+                    check(Posix.attrSetFlags(attr, Posix.POSIX_SPAWN_SETSIGMASK), "posix_spawnattr_setflags");
+                    int stdin = redirect(arena, actions, builder.redirectInput(), STDIN, parentEnds, childEnds);
+                    int stdout = redirect(arena, actions, builder.redirectOutput(), STDOUT, parentEnds, childEnds);
+                    int stderr;
+                    if (builder.redirectErrorStream()) {
+                        check(Posix.addDup2(actions, STDOUT, STDERR), "posix_spawn_file_actions_adddup2");
+                        stderr = -1;
+                    } else {
+                        stderr = redirect(arena, actions, builder.redirectError(), STDERR, parentEnds, childEnds);
+                    }
+                    check(Posix.addChdir(actions, arena.allocateFrom(dir.toString())), "posix_spawn_file_actions_addchdir_np");
+                    if (Posix.canCloseFrom()) {
+                        // descriptors the JVM opened without close-on-exec
+                        check(Posix.addCloseFrom(actions, STDERR + 1), "posix_spawn_file_actions_addclosefrom_np");
+                    }
+                    MemorySegment pid = arena.allocate(ValueLayout.JAVA_INT);
+                    int error = Posix.spawnp(pid, arena.allocateFrom(command.get(0)), actions, attr,
+                            strings(arena, command), strings(arena, environment(builder.environment())));
+                    if (error != 0) {
+                        throw new IOException("Cannot run program \"" + command.get(0) + "\" (in directory \"" + dir
+                                + "\"): error=" + error + ", " + NativeResult.failure(error).describe());
+                    }
+                    started = true;
+                    return new SpawnedProcess(pid.get(ValueLayout.JAVA_INT, 0L),
+                            stdin < 0 ? OutputStream.nullOutputStream() : PipeEnd.outputStream(stdin),
+                            stdout < 0 ? InputStream.nullInputStream() : PipeEnd.inputStream(stdout),
+                            stderr < 0 ? InputStream.nullInputStream() : PipeEnd.inputStream(stderr));
+                } finally {
+                    Posix.attrDestroy(attr);
+                }
+            } finally {
+                Posix.fileActionsDestroy(actions);
+            }
+        } finally {
+            childEnds.forEach(Posix::close);
+            if (!started) {
+                parentEnds.forEach(Posix::close);
+            }
+        }
+    }
+
+    /**
+     * Sets up one standard stream of the child.
+     * @return the parent's end of the pipe, or -1 if there is no pipe
+     */
+    private static int redirect(Arena arena, MemorySegment actions, ProcessBuilder.Redirect redirect, int target,
+                                List<Integer> parentEnds, List<Integer> childEnds) throws IOException {
+        switch (redirect.type()) {
+            case PIPE:
+                MemorySegment fds = arena.allocate(ValueLayout.JAVA_INT, 2L);
+                int error = Posix.pipe(fds);
+                if (error != 0) {
+                    throw new IOException("Can not create pipe: " + NativeResult.failure(error).describe());
+                }
+                int readEnd = fds.getAtIndex(ValueLayout.JAVA_INT, 0L);
+                int writeEnd = fds.getAtIndex(ValueLayout.JAVA_INT, 1L);
+                int parentEnd = target == STDIN ? writeEnd : readEnd;
+                int childEnd = target == STDIN ? readEnd : writeEnd;
+                parentEnds.add(parentEnd);
+                childEnds.add(childEnd);
+                check(Posix.addDup2(actions, childEnd, target), "posix_spawn_file_actions_adddup2");
+                return parentEnd;
+            case READ:
+                open(arena, actions, target, redirect.file(), Posix.O_RDONLY);
+                return -1;
+            case WRITE:
+                open(arena, actions, target, redirect.file(), Posix.O_WRONLY | Posix.O_CREAT | Posix.O_TRUNC);
+                return -1;
+            case APPEND:
+                open(arena, actions, target, redirect.file(), Posix.O_WRONLY | Posix.O_CREAT | Posix.O_APPEND);
+                return -1;
+            default:
+                return -1;
+        }
+    }
+
+    private static void open(Arena arena, MemorySegment actions, int target, File file, int flags) throws IOException {
+        MemorySegment path = arena.allocateFrom(file.toPath().toAbsolutePath().toString());
+        check(Posix.addOpen(actions, target, path, flags, 0666), "posix_spawn_file_actions_addopen");
+    }
+
+    private static List<String> environment(Map<String, String> environment) {
+        List<String> entries = new ArrayList<>(environment.size());
+        environment.forEach((key, value) -> entries.add(key + '=' + value));
+        return entries;
+    }
+
+    /**
+     * A <code>NULL</code> terminated array of C strings.
+     */
+    private static MemorySegment strings(Arena arena, List<String> values) {
+        MemorySegment array = arena.allocate(ValueLayout.ADDRESS, values.size() + 1L);
+        for (int i = 0; i < values.size(); ++i) {
+            array.setAtIndex(ValueLayout.ADDRESS, i, arena.allocateFrom(values.get(i)));
+        }
+        array.setAtIndex(ValueLayout.ADDRESS, values.size(), MemorySegment.NULL);
+        return array;
+    }
+
+    private static void check(int error, String function) throws IOException {
+        if (error != 0) {
+            throw new IOException(function + " has failed: " + NativeResult.failure(error).describe());
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.spawn;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.foreign.Arena;
+import java.lang.foreign.MemorySegment;
+import java.lang.foreign.ValueLayout;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A child started by {@link PosixSpawn}. The exit is detected by {@link ProcessHandle#onExit()} (it waits without
+ * reaping), then the child is reaped here, so there are no zombies, even if nobody waits for it.
+ */
+final class SpawnedProcess extends Process {
+    private final int pid;
+    private final ProcessHandle handle;
+    private final OutputStream stdin;
+    private final InputStream stdout;
+    private final InputStream stderr;
+    private final CompletableFuture<Process> exit;
+    private volatile int exitCode;
+
+    SpawnedProcess(int pid, OutputStream stdin, InputStream stdout, InputStream stderr) {
+        this.pid = pid;
+        this.stdin = stdin;
+        this.stdout = stdout;
+        this.stderr = stderr;
+        this.handle = ProcessHandle.of(pid).orElseThrow(() -> new IllegalStateException("Spawned process is gone: " + pid));
+        this.exit = handle.onExit().thenApply(ignored -> reap());
+    }
+
+    private Process reap() {
+        try (Arena arena = Arena.ofConfined()) {
+            MemorySegment status = arena.allocate(ValueLayout.JAVA_INT);
+            int result = Posix.waitpid(pid, status, 0);
+            exitCode = result == pid ? decode(status.get(ValueLayout.JAVA_INT, 0L)) : -1;
+        }
+        return this;
+    }
+
+    /**
+     * Same values as {@link ProcessBuilder}'s processes: the exit status, or 128 plus the number of the killing signal.
+     */
+    private static int decode(int status) {
+        int signal = status & 0x7f;
+        return signal == 0 ? (status >> 8) & 0xff : 0x80 + signal;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return stdin;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return stdout;
+    }
+
+    @Override
+    public InputStream getErrorStream() {
+        return stderr;
+    }
+
+    @Override
+    public int waitFor() throws InterruptedException {
+        try {
+            exit.get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Can not wait for process: " + pid, e.getCause());
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean waitFor(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            exit.get(timeout, unit);
+            return true;
+        } catch (TimeoutException e) {
+            return false;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Can not wait for process: " + pid, e.getCause());
+        }
+    }
+
+    @Override
+    public int exitValue() {
+        if (!exit.isDone()) {
+            throw new IllegalThreadStateException("process hasn't exited");
+        }
+        return exitCode;
+    }
+
+    @Override
+    public boolean isAlive() {
+        return !exit.isDone();
+    }
+
+    @Override
+    public void destroy() {
+        signal(Posix.SIGTERM);
+    }
+
+    @Override
+    public Process destroyForcibly() {
+        signal(Posix.SIGKILL);
+        return this;
+    }
+
+    @Override
+    public boolean supportsNormalTermination() {
+        return true;
+    }
+
+    @Override
+    public long pid() {
+        return pid;
+    }
+
+    @Override
+    public ProcessHandle toHandle() {
+        return handle;
+    }
+
+    @Override
+    public CompletableFuture<Process> onExit() {
+        return exit.copy();
+    }
+
+    @Override
+    public String toString() {
+        return "SpawnedProcess[pid=" + pid + ", exitValue=" + (exit.isDone() ? exitCode : "\"not exited\"") + "]";
+    }
+
+    private void signal(int signal) {
+        // once reaped, the pid may belong to someone else
+        if (!exit.isDone()) {
+            Posix.kill(pid, signal);
+        }
+    }
+}
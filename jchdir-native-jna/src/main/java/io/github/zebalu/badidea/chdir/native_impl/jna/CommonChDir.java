@@ -1,20 +1,32 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-package io.github.zebalu.badidea.chdir.native_impl.jna;
-
-interface CommonChDir {
-    boolean chdir(String path);
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import io.github.zebalu.badidea.chdir.NativeResult;
+
+interface CommonChDir {
+    NativeResult chdir(String path);
+
+    String getcwd();
+
+    default Object prepare(String path) {
+        return null;
+    }
+
+    default NativeResult chdirPrepared(String path, Object prepared) {
+        return chdir(path);
+    }
+}
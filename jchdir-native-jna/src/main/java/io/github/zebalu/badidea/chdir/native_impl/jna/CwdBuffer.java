@@ -0,0 +1,34 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+/**
+ * Per-thread buffer for <code>getcwd</code>, so sampling the native working directory does not allocate one on every
+ * call. Directories longer than the buffer can not be read.
+ */
+final class CwdBuffer {
+    private static final int SIZE = 4096;
+    private static final ThreadLocal<byte[]> BUFFERS = ThreadLocal.withInitial(() -> new byte[SIZE]);
+
+    private CwdBuffer() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    static byte[] get() {
+        return BUFFERS.get();
+    }
+}
@@ -0,0 +1,64 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+import io.github.zebalu.badidea.chdir.NativeResult;
+
+/**
+ * Direct mapping (<code>Native.register</code>) of <code>libc</code>'s <code>chdir</code>. It calls a static native
+ * method, with no proxy, no <code>InvocationHandler</code> and no String conversion on the call path.
+ */
+class DirectUnixChDir implements CommonChDir {
+    static {
+        Native.register("c");
+    }
+
+    private volatile EncodedPath last;
+
+    private static native int chdir(byte[] path);
+
+    private static native Pointer getcwd(byte[] buffer, NativeLong size);
+
+    @Override
+    public NativeResult chdir(String path) {
+        EncodedPath encoded = EncodedPath.of(last, path);
+        last = encoded;
+        return 0 == chdir(encoded.bytes()) ? NativeResult.success() : NativeResult.failure(Native.getLastError());
+    }
+
+    @Override
+    public Object prepare(String path) {
+        return Native.toByteArray(path);
+    }
+
+    @Override
+    public NativeResult chdirPrepared(String path, Object prepared) {
+        if (!(prepared instanceof byte[])) {
+            return chdir(path);
+        }
+        return 0 == chdir((byte[]) prepared) ? NativeResult.success() : NativeResult.failure(Native.getLastError());
+    }
+
+    @Override
+    public String getcwd() {
+        byte[] buffer = CwdBuffer.get();
+        return getcwd(buffer, new NativeLong(buffer.length)) == null ? null : Native.toString(buffer);
+    }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import com.sun.jna.Native;
+import com.sun.jna.Pointer;
+import io.github.zebalu.badidea.chdir.NativeResult;
+
+/**
+ * Direct mapping (<code>Native.register</code>) of <code>msvcrt</code>'s <code>_chdir</code>. It calls a static native
+ * method, with no proxy, no <code>InvocationHandler</code> and no String conversion on the call path.
+ */
+class DirectWindowsChDir implements CommonChDir {
+    static {
+        Native.register("msvcrt");
+    }
+
+    private volatile EncodedPath last;
+
+    private static native int _chdir(byte[] path);
+
+    private static native Pointer _errno();
+
+    private static native Pointer _getcwd(byte[] buffer, int size);
+
+    @Override
+    public NativeResult chdir(String path) {
+        EncodedPath encoded = EncodedPath.of(last, path);
+        last = encoded;
+        return 0 == _chdir(encoded.bytes()) ? NativeResult.success() : NativeResult.failure(_errno().getInt(0));
+    }
+
+    @Override
+    public Object prepare(String path) {
+        return Native.toByteArray(path);
+    }
+
+    @Override
+    public NativeResult chdirPrepared(String path, Object prepared) {
+        if (!(prepared instanceof byte[])) {
+            return chdir(path);
+        }
+        return 0 == _chdir((byte[]) prepared) ? NativeResult.success() : NativeResult.failure(_errno().getInt(0));
+    }
+
+    @Override
+    public String getcwd() {
+        byte[] buffer = CwdBuffer.get();
+        return _getcwd(buffer, buffer.length) == null ? null : Native.toString(buffer);
+    }
+}
@@ -0,0 +1,66 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import com.sun.jna.Native;
+
+/**
+ * The last path with its NUL terminated C string form (in JNA's default encoding), and the one before it. As
+ * {@link io.github.zebalu.badidea.chdir.ChangeDir} passes the same String instance for a directory it has cached or is
+ * restoring, switching back and forth between two directories does not need encoding again.
+ * Instances are immutable, so they can be shared between threads.
+ */
+final class EncodedPath {
+    private final String path;
+    private final byte[] bytes;
+    private final String previousPath;
+    private final byte[] previousBytes;
+
+    private EncodedPath(String path, byte[] bytes, String previousPath, byte[] previousBytes) {
+        this.path = path;
+        this.bytes = bytes;
+        this.previousPath = previousPath;
+        this.previousBytes = previousBytes;
+    }
+
+    /**
+     * Returns the encoded form of the path, reusing the bytes of the last or the previous path, if it is the same.
+     * @param last the last encoded path, can be <code>null</code>
+     * @param path the path to encode
+     * @return the last instance, or a new one, that remembers the last path as its previous one
+     */
+    static EncodedPath of(EncodedPath last, String path) {
+        if (last == null) {
+            return new EncodedPath(path, Native.toByteArray(path), null, null);
+        }
+        if (same(last.path, path)) {
+            return last;
+        }
+        if (same(last.previousPath, path)) {
+            return new EncodedPath(last.previousPath, last.previousBytes, last.path, last.bytes);
+        }
+        return new EncodedPath(path, Native.toByteArray(path), last.path, last.bytes);
+    }
+
+    private static boolean same(String known, String path) {
+        return known == path || (known != null && known.equals(path));
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+}
@@ -1,52 +1,127 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir.native_impl.jna;
-
-import io.github.zebalu.badidea.chdir.NativeChangeDir;
-import io.github.zebalu.badidea.chdir.util.OsUtil;
-
-/**
- * Changing directory through JNA library. Should not be used, only through the {@link io.github.zebalu.badidea.chdir.ChangeDir} instance.
- */
-public class JnaNativeChDir implements NativeChangeDir {
-
-    private final CommonChDir chDir;
-
-    /**
-     * Creates an instance with an operating system specific {@link CommonChDir} impplementation.
-     */
-    public JnaNativeChDir() {
-        chDir = OsUtil.isWindows() ? new WindowsChDir() : new UnixChDir();
-    }
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean changeDir(String dir) {
-        return chDir.chdir(dir);
-    }
-
-    /**
-     * 4 as preference number
-     * @return 4 always
-     */
-    @Override
-    public int preference() {
-        return 4;
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import io.github.zebalu.badidea.chdir.NativeChangeDir;
+import io.github.zebalu.badidea.chdir.NativePreference;
+import io.github.zebalu.badidea.chdir.NativeResult;
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+import io.github.zebalu.badidea.chdir.util.OsUtil;
+
+/**
+ * Changing directory through JNA library. Should not be used, only through the {@link io.github.zebalu.badidea.chdir.ChangeDir} instance.
+ * <p>
+ * By default it uses JNA's direct mapping (static native methods, registered with <code>Native.register</code>), and
+ * the C string of a path is encoded only once, when the path changes. If the direct mapping can not be registered, it
+ * falls back to the interface mapping (<code>Native.load</code>), which calls through a proxy and converts the String on
+ * every call.
+ */
+@NativePreference(4)
+public class JnaNativeChDir implements NativeChangeDir {
+
+    private final LazyInit<CommonChDir> chDir;
+
+    /**
+     * Creates an instance with an operating system specific, direct mapped {@link CommonChDir} impplementation.
+     */
+    public JnaNativeChDir() {
+        this(true);
+    }
+
+    /**
+     * Creates an instance with an operating system specific {@link CommonChDir} impplementation. The native library is
+     * only loaded on first use.
+     * @param directMapping <code>true</code> to use direct mapping (falls back to interface mapping, if it can not be
+     *                      registered), <code>false</code> to use interface mapping only
+     */
+    public JnaNativeChDir(boolean directMapping) {
+        chDir = new LazyInit<>(() -> directMapping ? directChDir() : interfaceChDir());
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean changeDir(String dir) {
+        return chDir.get().chdir(dir).isSuccess();
+    }
+
+    /**
+     * {@inheritDoc}
+     * The reason of failure is the C runtime's <code>errno</code>.
+     */
+    @Override
+    public NativeResult changeDirWithResult(String dir) {
+        return chDir.get().chdir(dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     * With direct mapping it is the NUL terminated C string of the path, interface mapping has nothing to prepare.
+     */
+    @Override
+    public Object prepare(String dir) {
+        return chDir.get().prepare(dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public NativeResult changeDirPrepared(String dir, Object prepared) {
+        return chDir.get().chdirPrepared(dir, prepared);
+    }
+
+    /**
+     * {@inheritDoc}
+     * It calls <code>getcwd</code> (<code>_getcwd</code> on Windows) into a reusable, per-thread buffer.
+     */
+    @Override
+    public String getCwd() {
+        return chDir.get().getcwd();
+    }
+
+    /**
+     * Failures are reported with their <code>errno</code>.
+     * @return true always
+     */
+    @Override
+    public boolean reportsErrno() {
+        return true;
+    }
+
+    /**
+     * 4 as preference number
+     * @return 4 always
+     */
+    @Override
+    public int preference() {
+        return 4;
+    }
+
+    private static CommonChDir directChDir() {
+        try {
+            return OsUtil.isWindows() ? new DirectWindowsChDir() : new DirectUnixChDir();
+        } catch (LinkageError le) {
+            return interfaceChDir();
+        }
+    }
+
+    private static CommonChDir interfaceChDir() {
+        return OsUtil.isWindows() ? new WindowsChDir() : new UnixChDir();
+    }
+}
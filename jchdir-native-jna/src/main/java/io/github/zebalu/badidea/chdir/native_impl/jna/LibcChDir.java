@@ -1,31 +1,41 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir.native_impl.jna;
-
-import com.sun.jna.Library;
-
-/**
- * Mapping for <code>libc</code>'s <code>chdir</code> method.
- */
-public interface LibcChDir extends Library {
-    /**
-     * calls <code>libc</code>'s <code>chdir</code> method
-     * @param path the new path
-     * @return 0 on success
-     */
-    int chdir(String path);
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import com.sun.jna.Library;
+import com.sun.jna.NativeLong;
+import com.sun.jna.Pointer;
+
+/**
+ * Mapping for <code>libc</code>'s <code>chdir</code> and <code>getcwd</code> methods.
+ */
+public interface LibcChDir extends Library {
+    /**
+     * calls <code>libc</code>'s <code>chdir</code> method
+     * @param path the new path
+     * @return 0 on success
+     */
+    int chdir(String path);
+
+    /**
+     * calls <code>libc</code>'s <code>getcwd</code> method
+     * @param buffer the buffer to write the directory into
+     * @param size size of the buffer
+     * @return the buffer on success, <code>null</code> on failure
+     */
+    Pointer getcwd(byte[] buffer, NativeLong size);
+}
@@ -1,29 +1,37 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir.native_impl.jna;
-
-import com.sun.jna.Native;
-import io.github.zebalu.badidea.chdir.util.LazyInit;
-
-class UnixChDir implements CommonChDir {
-    private static final LazyInit<LibcChDir> libcChDir = new LazyInit<LibcChDir>(()->Native.load("c", LibcChDir.class));
-
-    @Override
-    public boolean chdir(String path) {
-        return 0 == libcChDir.get().chdir(path);
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jna;
+
+import com.sun.jna.Native;
+import com.sun.jna.NativeLong;
+import io.github.zebalu.badidea.chdir.NativeResult;
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+
+class UnixChDir implements CommonChDir {
+    private static final LazyInit<LibcChDir> libcChDir = new LazyInit<LibcChDir>(()->Native.load("c", LibcChDir.class));
+
+    @Override
+    public NativeResult chdir(String path) {
+        return 0 == libcChDir.get().chdir(path) ? NativeResult.success() : NativeResult.failure(Native.getLastError());
+    }
+
+    @Override
+    public String getcwd() {
+        byte[] buffer = CwdBuffer.get();
+        return libcChDir.get().getcwd(buffer, new NativeLong(buffer.length)) == null ? null : Native.toString(buffer);
+    }
+}
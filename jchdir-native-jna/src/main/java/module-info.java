@@ -1,23 +1,23 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-module change.dir.jchdir.native_impl.jna {
-    requires java.base;
-    requires com.sun.jna;
-    requires change.dir.jchdir.main;
-    opens io.github.zebalu.badidea.chdir.native_impl.jna to com.sun.jna;
-    provides io.github.zebalu.badidea.chdir.NativeChangeDir with io.github.zebalu.badidea.chdir.native_impl.jna.JnaNativeChDir;
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+module change.dir.jchdir.native_impl.jna {
+    requires java.base;
+    requires com.sun.jna;
+    requires change.dir.jchdir.main;
+    opens io.github.zebalu.badidea.chdir.native_impl.jna to com.sun.jna;
+    provides io.github.zebalu.badidea.chdir.NativeChangeDir with io.github.zebalu.badidea.chdir.native_impl.jna.JnaNativeChDir;
 }
\ No newline at end of file
@@ -1,82 +1,265 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir.native_impl.jni;
-
-import io.github.zebalu.badidea.chdir.NativeChangeDir;
-import io.github.zebalu.badidea.chdir.util.LazyInit;
-import io.github.zebalu.badidea.chdir.util.OsUtil;
-
-import java.io.IOException;
-import java.io.InputStream;
-import java.nio.file.Files;
-import java.nio.file.Path;
-
-/**
- * JNI based implementation of the {@link NativeChangeDir} interface. During first usage it installs the required .so
- * file or .dll to <code>temo</code> folder in cases it is not there already.
- * Should not be used directly only through the {@link io.github.zebalu.badidea.chdir.ChangeDir} instance.
- */
-public class JniNativeChangeDir implements NativeChangeDir {
-    private static final LazyInit<JniChDir> INSTANCE = new LazyInit<>(() -> {
-        loadLibrary();
-        return new JniChDir();
-    });
-
-    /**
-     * {@inheritDoc}
-     */
-    @Override
-    public boolean changeDir(String dir) {
-        return 0 == INSTANCE.get().chDir(dir);
-    }
-
-    /**
-     * Returns 1 as preference number
-     * @return always 1
-     */
-    @Override
-    public int preference() {
-        return 1;
-    }
-
-    private static void loadLibrary() {
-        String toLoad = getOrCreateLibPath();
-        System.load(toLoad);
-    }
-
-    private static String getOrCreateLibPath() {
-        String name = OsUtil.isWindows() ? "jchdir_jni.dll" : "libjchdir_jni.so";
-        String tmp = System.getProperty("java.io.tmpdir");
-        Path libPath = Path.of(tmp, name);
-        if (!libPath.toFile().exists()) {
-            copyLibrary(name, libPath);
-        }
-        System.out.println("lib: " + libPath);
-        return libPath.toString();
-    }
-
-    private static void copyLibrary(String name, Path libPath) {
-        try (InputStream is = JniNativeChangeDir.class.getResourceAsStream("/" + name)) {
-            if (null == is) {
-                throw new IllegalStateException("Lib file (/" + name + ") is missing from classpath");
-            }
-            Files.copy(is, libPath);
-        } catch (IOException ioe) {
-            throw new IllegalStateException("Can not copy lib file (/" + name + ") to " + libPath, ioe);
-        }
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.native_impl.jni;
+
+import io.github.zebalu.badidea.chdir.ChdirConfig;
+import io.github.zebalu.badidea.chdir.NativeChangeDir;
+import io.github.zebalu.badidea.chdir.NativePreference;
+import io.github.zebalu.badidea.chdir.NativeResult;
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+import io.github.zebalu.badidea.chdir.util.OsUtil;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Set;
+
+/**
+ * JNI based implementation of the {@link NativeChangeDir} interface. During first usage it installs the required .so
+ * file or .dll to <code>temp</code> folder in cases it is not there already. The installed file's name contains the
+ * hash of its content (e.g. <code>libjchdir_jni-0123456789abcdef.so</code>), so different versions never use each
+ * other's library. It is written to a temporary file first, and renamed atomically, so JVMs starting at the same time
+ * do not see half written files.
+ * On systems with POSIX permissions it goes to a directory of the user in <code>temp</code>
+ * (<code>jchdir-&lt;user.name&gt;</code>, only accessible by its owner), as the shared <code>temp</code> folder could
+ * hold a file of the same name from anybody. If that directory belongs to someone else, or others can access it, a new
+ * private directory is used instead. An existing file is only loaded, if its content is the same as the one on the
+ * class path, otherwise it is written again.
+ * If {@link ChdirConfig#jniLibDir()} is set, the library is loaded from there, without reading the class path.
+ * Should not be used directly only through the {@link io.github.zebalu.badidea.chdir.ChangeDir} instance.
+ */
+@NativePreference(1)
+public class JniNativeChangeDir implements NativeChangeDir {
+    // abiVersion of the libraries, whose chDir returns errno, and that have getCwd, older ones do not have abiVersion
+    private static final int ERRNO_ABI_VERSION = 2;
+    private static final Set<PosixFilePermission> OWNER_ONLY = PosixFilePermissions.fromString("rwx------");
+    private static final LazyInit<JniChDir> INSTANCE = new LazyInit<>(() -> {
+        loadLibrary();
+        return new JniChDir();
+    });
+    private static final LazyInit<Integer> ABI_VERSION = new LazyInit<>(() -> {
+        try {
+            return INSTANCE.get().abiVersion();
+        } catch (UnsatisfiedLinkError e) {
+            return 0;
+        }
+    });
+
+    /**
+     * {@inheritDoc}
+     */
+    @Override
+    public boolean changeDir(String dir) {
+        return 0 == INSTANCE.get().chDir(dir);
+    }
+
+    /**
+     * {@inheritDoc}
+     * The native library returns <code>errno</code> on failure. (Libraries built before that return <code>-1</code>,
+     * that is reported as {@link NativeResult#UNKNOWN_ERRNO}, see {@link #reportsErrno()}.)
+     */
+    @Override
+    public NativeResult changeDirWithResult(String dir) {
+        int result = INSTANCE.get().chDir(dir);
+        return 0 == result ? NativeResult.success() : NativeResult.failure(result);
+    }
+
+    /**
+     * {@inheritDoc}
+     * Libraries built before <code>getCwd</code> was added can not read it, <code>null</code> is returned then. That is
+     * found out once, when the library is loaded, not on every call.
+     */
+    @Override
+    public String getCwd() {
+        if (ABI_VERSION.get() < ERRNO_ABI_VERSION) {
+            return null;
+        }
+        return INSTANCE.get().getCwd();
+    }
+
+    /**
+     * Failures are reported with their <code>errno</code>, if the loaded library is new enough to do so. Otherwise
+     * (e.g. a library built from older sources) {@link io.github.zebalu.badidea.chdir.ChangeDir} keeps validating the
+     * directories in Java, so failures are still described. It loads the library to ask, and returns
+     * <code>false</code>, if it can not be loaded.
+     * @return <code>true</code> if the library reports <code>errno</code>
+     */
+    @Override
+    public boolean reportsErrno() {
+        try {
+            return ABI_VERSION.get() >= ERRNO_ABI_VERSION;
+        } catch (IllegalStateException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Returns 1 as preference number
+     * @return always 1
+     */
+    @Override
+    public int preference() {
+        return 1;
+    }
+
+    private static void loadLibrary() {
+        String toLoad = getOrCreateLibPath();
+        System.load(toLoad);
+    }
+
+    private static String getOrCreateLibPath() {
+        String name = OsUtil.isWindows() ? "jchdir_jni.dll" : "libjchdir_jni.so";
+        String preinstalled = ChdirConfig.getInstance().jniLibDir().trim();
+        if (!preinstalled.isEmpty()) {
+            Path libPath = Path.of(preinstalled, name).toAbsolutePath();
+            if (!Files.isRegularFile(libPath)) {
+                throw new IllegalStateException("Lib file is missing from the configured directory: " + libPath);
+            }
+            return libPath.toString();
+        }
+        byte[] content = readLibrary(name);
+        Path libPath = libraryPath(versionedName(name, content));
+        if (!hasContent(libPath, content)) {
+            extractLibrary(content, libPath);
+            if (!hasContent(libPath, content)) {
+                throw new IllegalStateException("Lib file has unexpected content: " + libPath);
+            }
+        }
+        return libPath.toString();
+    }
+
+    private static Path libraryPath(String fileName) {
+        Path tmp = Path.of(System.getProperty("java.io.tmpdir"));
+        if (!tmp.getFileSystem().supportedFileAttributeViews().contains("posix")) {
+            // e.g. Windows, where the temp folder belongs to the user
+            return tmp.resolve(fileName);
+        }
+        Path dir = tmp.resolve("jchdir-" + System.getProperty("user.name").replaceAll("[^A-Za-z0-9._-]", "_"));
+        try {
+            try {
+                Files.createDirectory(dir, PosixFilePermissions.asFileAttribute(OWNER_ONLY));
+            } catch (FileAlreadyExistsException faee) {
+                // created by an earlier run, or by someone else, it is checked below
+            }
+            if (isPrivate(dir)) {
+                return dir.resolve(fileName);
+            }
+            // createTempDirectory makes it accessible only by its owner, it is not reused by other runs
+            Path own = Files.createTempDirectory(tmp, "jchdir-");
+            own.toFile().deleteOnExit();
+            Path libPath = own.resolve(fileName);
+            libPath.toFile().deleteOnExit();
+            return libPath;
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Can not create directory for lib file in " + tmp, ioe);
+        }
+    }
+
+    private static boolean isPrivate(Path dir) throws IOException {
+        PosixFileAttributes attributes = Files.readAttributes(dir, PosixFileAttributes.class, LinkOption.NOFOLLOW_LINKS);
+        if (!attributes.isDirectory() || !attributes.permissions().equals(OWNER_ONLY)) {
+            return false;
+        }
+        try {
+            UserPrincipal user = dir.getFileSystem().getUserPrincipalLookupService()
+                    .lookupPrincipalByName(System.getProperty("user.name"));
+            return attributes.owner().equals(user);
+        } catch (IOException ioe) {
+            // e.g. the user has no name in a container
+            return false;
+        }
+    }
+
+    private static boolean hasContent(Path libPath, byte[] content) {
+        try {
+            return Files.isRegularFile(libPath, LinkOption.NOFOLLOW_LINKS) && Files.size(libPath) == content.length
+                    && Arrays.equals(Files.readAllBytes(libPath), content);
+        } catch (IOException ioe) {
+            return false;
+        }
+    }
+
+    private static byte[] readLibrary(String name) {
+        try (InputStream is = JniNativeChangeDir.class.getResourceAsStream("/" + name)) {
+            if (null == is) {
+                throw new IllegalStateException("Lib file (/" + name + ") is missing from classpath");
+            }
+            return is.readAllBytes();
+        } catch (IOException ioe) {
+            throw new IllegalStateException("Can not read lib file (/" + name + ") from classpath", ioe);
+        }
+    }
+
+    private static String versionedName(String name, byte[] content) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-256").digest(content);
+            StringBuilder sb = new StringBuilder(name.length() + 17);
+            int dot = name.lastIndexOf('.');
+            sb.append(name, 0, dot).append('-');
+            for (int i = 0; i < 8; ++i) {
+                sb.append(Character.forDigit((hash[i] >> 4) & 0xF, 16)).append(Character.forDigit(hash[i] & 0xF, 16));
+            }
+            return sb.append(name, dot, name.length()).toString();
+        } catch (NoSuchAlgorithmException nsae) {
+            throw new IllegalStateException("SHA-256 is not available", nsae);
+        }
+    }
+
+    private static void extractLibrary(byte[] content, Path libPath) {
+        Path tmp = null;
+        try {
+            tmp = Files.createTempFile(libPath.getParent(), libPath.getFileName().toString(), ".tmp");
+            Files.write(tmp, content);
+            try {
+                Files.move(tmp, libPath, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException amnse) {
+                Files.move(tmp, libPath);
+            }
+        } catch (FileAlreadyExistsException faee) {
+            // an other JVM was faster, the content is checked by the caller
+        } catch (IOException ioe) {
+            if (!Files.isRegularFile(libPath)) {
+                throw new IllegalStateException("Can not copy lib file to " + libPath, ioe);
+            }
+            // on Windows the file can not be replaced while an other JVM has it loaded, but it is already there
+        } finally {
+            deleteQuietly(tmp);
+        }
+    }
+
+    private static void deleteQuietly(Path tmp) {
+        if (tmp != null) {
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // it is only a leftover temp file
+            }
+        }
+    }
+}
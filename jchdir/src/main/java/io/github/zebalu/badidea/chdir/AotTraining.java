@@ -0,0 +1,96 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Training run for the JDK's AOT cache (<code>-XX:AOTCacheOutput</code>, JDK 25+, or <code>-XX:AOTMode=record</code>
+ * on JDK 24) and for CDS archives (<code>-XX:ArchiveClassesAtExit</code>). It does everything the first
+ * {@link ChangeDir#getInstance()} and the first changes do: loads {@link ChdirConfig}, selects the native backend,
+ * resolves the JDK internal fields, and switches to a temporary directory and back in all the supported ways. The
+ * application started with the cache then finds all of that loaded and linked.
+ * <p>
+ * It runs with the same configuration (system properties, environment, <code>~/.jchdir.rc</code>) as the application,
+ * so train with the backend the application will select.
+ */
+public final class AotTraining {
+
+    private static final System.Logger LOG = System.getLogger(AotTraining.class.getName());
+
+    private AotTraining() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Runs the training from the command line, and logs the result on {@link ChdirConfig#logLevel()}.
+     * @param args not used
+     */
+    public static void main(String[] args) {
+        String trained = train();
+        LOG.log(ChdirConfig.getInstance().logLevel(), "Trained with working directory: " + trained);
+    }
+
+    /**
+     * Runs the training, it can also be called from the application's own training run. The working directory is the
+     * same afterwards, as before.
+     * @return the working directory
+     */
+    public static String train() {
+        ChangeDir changeDir = ChangeDir.getInstance();
+        String original = changeDir.getCWD();
+        Path dir = createTempDirectory();
+        try {
+            changeDir.changeDir(dir.toString());
+            changeDir.changeDir(original);
+            changeDir.changeDir(dir.toFile());
+            changeDir.changeDir(Path.of(original));
+            DirHandle handle = changeDir.prepare(dir);
+            changeDir.changeDir(handle);
+            changeDir.changeDir(original);
+            DirScope scope = changeDir.push(dir.toString());
+            try {
+                changeDir.verify();
+            } finally {
+                scope.close();
+            }
+            changeDir.resync();
+            return changeDir.getCWD();
+        } finally {
+            changeDir.changeDir(original);
+            deleteQuietly(dir);
+        }
+    }
+
+    private static Path createTempDirectory() {
+        try {
+            return Files.createTempDirectory("jchdir-training").toRealPath();
+        } catch (IOException ioe) {
+            throw new UncheckedIOException("Can not create training directory", ioe);
+        }
+    }
+
+    private static void deleteQuietly(Path dir) {
+        try {
+            Files.deleteIfExists(dir);
+        } catch (IOException ignored) {
+            // a leftover empty temporary directory does not hurt
+        }
+    }
+}
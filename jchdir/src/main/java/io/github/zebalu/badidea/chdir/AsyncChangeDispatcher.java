@@ -0,0 +1,98 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.io.File;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Single writer behind {@link ChangeDir#changeDirAsync(String)}. Requests are pushed to a lock-free stack. The writer
+ * thread takes all of them at once, and only applies the latest one. Every other request in the batch is superseded,
+ * its future completes with the directory that is current after the batch. If the change fails with an {@link Error},
+ * every future of the batch completes with it, before it is thrown on.
+ */
+final class AsyncChangeDispatcher {
+
+    private final Consumer<String> change;
+    private final Supplier<String> state;
+    private final AtomicReference<Request> pending = new AtomicReference<>();
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "jchdir-async-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Creates a dispatcher, its writer thread is started with the first request.
+     * @param change applies a change, like {@link ChangeDir#changeDir(String)}
+     * @param state returns the working directory, like {@link ChangeDir#getCWD()}
+     */
+    AsyncChangeDispatcher(Consumer<String> change, Supplier<String> state) {
+        this.change = change;
+        this.state = state;
+    }
+
+    CompletableFuture<String> submit(String dir) {
+        Request request = new Request(new File(dir).getAbsolutePath());
+        Request head;
+        do {
+            head = pending.get();
+            request.next = head;
+        } while (!pending.compareAndSet(head, request));
+        if (head == null) {
+            writer.execute(this::drain);
+        }
+        return request.future;
+    }
+
+    private void drain() {
+        Request latest = pending.getAndSet(null);
+        if (latest == null) {
+            return;
+        }
+        try {
+            change.accept(latest.dir);
+            latest.future.complete(state.get());
+        } catch (RuntimeException e) {
+            latest.future.completeExceptionally(e);
+        } catch (Throwable t) {
+            for (Request request = latest; request != null; request = request.next) {
+                request.future.completeExceptionally(t);
+            }
+            throw t;
+        }
+        String after = state.get();
+        for (Request superseded = latest.next; superseded != null; superseded = superseded.next) {
+            superseded.future.complete(after);
+        }
+    }
+
+    private static final class Request {
+        private final String dir;
+        private final CompletableFuture<String> future = new CompletableFuture<>();
+        private Request next;
+
+        private Request(String dir) {
+            this.dir = dir;
+        }
+    }
+}
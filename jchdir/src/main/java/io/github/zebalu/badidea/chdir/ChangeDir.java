@@ -1,229 +1,769 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir;
-
-import io.github.zebalu.badidea.chdir.util.LazyInit;
-import io.github.zebalu.badidea.chdir.util.OsUtil;
-
-import java.io.File;
-import java.io.IOException;
-import java.lang.System.Logger.Level;
-import java.lang.reflect.Field;
-import java.lang.reflect.InaccessibleObjectException;
-import java.nio.charset.StandardCharsets;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
-
-/**
- * Utility class to Change directory. It is designed to only be used through its static instance, that you can obtain by
- * <code>getInstance()</code> method.
- */
-public final class ChangeDir {
-
-    private static final System.Logger LOG = System.getLogger(ChangeDir.class.getName());
-    private static final LazyInit<ChangeDir> LAZY_INSTANCE = new LazyInit<>(()->new ChangeDir(ChdirConfig.getInstance()));
-
-    /**
-     * Returns to you the only instance to be used.
-     * @return the thread-safe {@link ChangeDir} instance
-     */
-    public static ChangeDir getInstance() {
-        return LAZY_INSTANCE.get();
-    }
-
-    private final Lock lock;
-    private final Level logLevel;
-    private final NativeChangeDir nativeChangeDir;
-
-    private String dir;
-    private final Object fileObject;
-    private final Field fileField;
-
-    private final boolean asByteArray;
-    private final Object pathObject;
-    private final Field pathField;
-
-
-    private ChangeDir(ChdirConfig config) {
-        lock = new ReentrantLock(config.fairLock());
-        logLevel = config.logLevel();
-        nativeChangeDir = NativeChangeDirLoader.getInstance();
-        System.out.println(nativeChangeDir.getClass().getName());
-        dir = System.getProperty("user.dir");
-        try {
-            Field fileFs = File.class.getDeclaredField("FS");
-            fileFs.setAccessible(true);
-            fileObject = fileFs.get(null);
-            fileField = fileObject.getClass().getDeclaredField("userDir");
-            fileField.setAccessible(true);
-
-            Path currentUserDir = Paths.get(dir);
-            Field pathFs = currentUserDir.getClass().getDeclaredField("fs");
-            pathFs.setAccessible(true);
-
-            if(OsUtil.isWindows()) {
-                pathObject = pathFs.get(currentUserDir);
-                pathField = pathObject.getClass().getDeclaredField("defaultDirectory");
-                pathField.setAccessible(true);
-                asByteArray = false;
-            } else {
-                pathObject = pathFs.get(currentUserDir);
-                Field[] declaredFields = pathObject.getClass().getDeclaredFields();
-                Field found = null;
-                for(int i=0; i<declaredFields.length && found == null; ++i) {
-                    Field field = declaredFields[i];
-                    if(field.getName().equals("userDir")) {
-                        found =  field;
-                        found.setAccessible(true);
-                    }
-                }
-                if(found == null) {
-                    found = findDefultDirectoryField(pathObject.getClass().getSuperclass(), 2);
-                    asByteArray = true;
-                } else {
-                    asByteArray = false;
-                }
-                pathField = found;
-            }
-        } catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException |
-                 InaccessibleObjectException e) {
-            LOG.log(logLevel, "probably missing jvm params: --add-opens java.base/java.io=change.dir.jchdir.main --add-opens java.base/sun.nio.fs=change.dir.jchdir.main");
-            LOG.log(logLevel, "or: --add-opens java.base/java.io=ALL-UNNAMED --add-opens java.base/sun.nio.fs=ALL-UNNAMED");
-            LOG.log(logLevel, "Can not get required fields to set", e);
-            throw new IllegalStateException("Can not initialise", e);
-        }
-    }
-
-    /**
-     * Changes the current working directory to the one given directory. At first it turns the directory into an absolute path, if possible.
-     * This method is thread-safe.
-     * @param dir the new working directory
-     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
-     * @throws RuntimeException if can not change specified fields of underlying FileSystem abstraction
-     */
-    public void changeDir(String dir) {
-        lock.lock();
-        try {
-            String toSet = ensureAbsolutePathToValidFolder(dir);
-            this.dir = toSet;
-            System.setProperty("user.dir", toSet);
-            fileField.set(fileObject, toSet);
-            if(!asByteArray) {
-                pathField.set(pathObject, toSet);
-            } else {
-                pathField.set(pathObject, toSet.getBytes(StandardCharsets.UTF_8));
-            }
-            boolean nativeSuccess = nativeChangeDir.changeDir(dir);
-            if(!nativeSuccess) {
-                LOG.log(logLevel, "Can not change native directory");
-            }
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    private static String ensureAbsolutePathToValidFolder(String dir) {
-        try {
-            File absCanonFile = new File(dir).getCanonicalFile().getAbsoluteFile();
-            if(!absCanonFile.exists()) {
-                throw new IllegalArgumentException("You can not set current working directory to a non existing folder");
-            }
-            if(!absCanonFile.isDirectory()) {
-                throw new IllegalArgumentException("You can not set current working directory to a regular file");
-            }
-            return absCanonFile.getPath();
-        } catch (IOException ioe) {
-            throw new IllegalArgumentException("Can not use path: "+dir, ioe);
-        }
-    }
-
-    private static Field findDefultDirectoryField(Class<?> clazz, int depthRemaining) {
-        if(clazz == null || depthRemaining <= 0) {
-            throw new IllegalStateException("Not supported OS / File System.");
-        }
-        for(Field field : clazz.getDeclaredFields()) {
-            if(field.getName().equals("defaultDirectory")) {
-                field.setAccessible(true);
-                return field;
-            }
-        }
-        return findDefultDirectoryField(clazz.getSuperclass(), depthRemaining - 1);
-    }
-
-    /**
-     * Changes the current working directory to the one given directory. At first it turns the directory into an absolute path, if possible.
-     * This method is thread-safe.
-     *
-     * @param file the new working directory
-     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
-     * @throws RuntimeException if can not change specified fields of underlying FileSystem abstraction
-     */
-    public void changeDir(File file) {
-        changeDir(file.getAbsolutePath());
-    }
-
-    /**
-     * Changes the current working directory to the one given directory. At first it turns the directory into an absolute path, if possible.
-     * This method is thread-safe.
-     *
-     * @param path the new working directory
-     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
-     * @throws RuntimeException if can not change specified fields of underlying FileSystem abstraction
-     */
-    public void changeDir(Path path) {
-        changeDir(path.toAbsolutePath().toString());
-    }
-
-    /**
-     * Returns the current working directory as String
-     * This method is thread-safe.
-     *
-     * @return absolute path of current working directory
-     */
-    public String getCWD() {
-        lock.lock();
-        try {
-            return dir;
-        } finally {
-            lock.unlock();
-        }
-    }
-
-    /**
-     * Returns the current working directory as an absolute path
-     * This method is thread-safe.
-     *
-     * @return the absolute file of current working directory.
-     */
-    public File getCWDFile() {
-        return new File(getCWD());
-    }
-
-    /**
-     * Returns the current working directory as an absolute path.
-     * This method is thread-safe.
-     *
-     * @return the absolute path of the current working directory.
-     */
-    public Path getCWDPath() {
-        return Path.of(getCWD());
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+import io.github.zebalu.badidea.chdir.util.ThreadUtil;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Utility class to Change directory. It is designed to only be used through its static instance, that you can obtain by
+ * <code>getInstance()</code> method.
+ */
+public final class ChangeDir {
+
+    private static final System.Logger LOG = System.getLogger(ChangeDir.class.getName());
+    private static final LazyInit<ChangeDir> LAZY_INSTANCE = new LazyInit<>(()->create(ChdirConfig.getInstance()));
+
+    /**
+     * Returns to you the only instance to be used.
+     * @return the thread-safe {@link ChangeDir} instance
+     */
+    public static ChangeDir getInstance() {
+        return LAZY_INSTANCE.get();
+    }
+
+    private final Lock lock;
+    private final Lock readLock;
+    private final Level logLevel;
+    private final NativeChangeDir nativeChangeDir;
+    private final boolean nativeFirst;
+    private final ValidatedPathCache pathCache;
+    private final ChangeDirStats stats;
+    private final PlatformOffload offload;
+    private final CwdListeners listeners;
+    private final LazyInit<AsyncChangeDispatcher> asyncDispatcher = new LazyInit<>(() -> new AsyncChangeDispatcher(this::changeDir, this::getCWD));
+
+    private volatile CwdSnapshot current;
+    private final ThreadLocal<CwdSnapshot> threadDirs = new ThreadLocal<>();
+    private final ThreadLocal<Deque<DirScope>> scopes = new ThreadLocal<>();
+
+    private static ChangeDir create(ChdirConfig config) {
+        ChangeDir instance = new ChangeDir(config);
+        DriftSampler.start(instance, config.driftSampleMillis(), config.logLevel());
+        CracHooks.register(instance, config.logLevel());
+        return instance;
+    }
+
+    private ChangeDir(ChdirConfig config) {
+        switch (config.lockStrategy()) {
+            case STAMPED:
+                StampedLock stampedLock = new StampedLock();
+                lock = stampedLock.asWriteLock();
+                readLock = stampedLock.asReadLock();
+                break;
+            case READ_WRITE:
+                ReentrantReadWriteLock readWriteLock = new ReentrantReadWriteLock(config.fairLock());
+                lock = readWriteLock.writeLock();
+                readLock = readWriteLock.readLock();
+                break;
+            default:
+                lock = new ReentrantLock(config.fairLock());
+                readLock = lock;
+                break;
+        }
+        logLevel = config.logLevel();
+        nativeChangeDir = NativeChangeDirLoader.getInstance();
+        nativeFirst = nativeChangeDir.reportsErrno();
+        pathCache = ValidatedPathCache.create(config.pathCacheSize(), logLevel);
+        stats = ChangeDirStats.create(config.stats(), logLevel);
+        offload = PlatformOffload.create(config.lockStrategy(), config.offloadThreads());
+        listeners = new CwdListeners(logLevel);
+        Throwable fieldFailure = FileSystemFields.initFailure();
+        if (fieldFailure != null) {
+            LOG.log(logLevel, "probably missing jvm params: --add-opens java.base/java.io=change.dir.jchdir.main --add-opens java.base/sun.nio.fs=change.dir.jchdir.main");
+            LOG.log(logLevel, "or: --add-opens java.base/java.io=ALL-UNNAMED --add-opens java.base/sun.nio.fs=ALL-UNNAMED");
+            LOG.log(logLevel, "Can not get required fields to set", fieldFailure);
+            throw new IllegalStateException("Can not initialise", fieldFailure);
+        }
+        current = new CwdSnapshot(System.getProperty("user.dir"));
+    }
+
+    /**
+     * Changes the current working directory to the one given directory. At first it turns the directory into an absolute path, if possible.
+     * This method is thread-safe.
+     * In case {@link ChdirConfig#pathCacheSize()} is set, recently used directories are not checked again, until they are deleted or renamed.
+     * If the native backend reports <code>errno</code> (see {@link NativeChangeDir#reportsErrno()}), the native directory
+     * is changed first, and the JVM level directory is only changed if that was successful. Otherwise the directory is
+     * checked in Java, and a failing native change is only logged.
+     * If {@link ChdirConfig#offloadThreads()} is set, and it is called from a virtual thread, the change is done on a
+     * platform thread, while the virtual thread waits unmounted.
+     * @param dir the new working directory
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws RuntimeException if can not change specified fields of underlying FileSystem abstraction
+     * @throws IllegalStateException if called from a thread with its own directory (see {@link #isolateCurrentThread()})
+     */
+    public void changeDir(String dir) {
+        ensureNotIsolated();
+        if (offload != null && offload.shouldOffload()) {
+            offload.run(() -> changeDir(dir));
+            return;
+        }
+        acquireLock();
+        try {
+            changeDirLocked(dir);
+        } finally {
+            unlockAndNotify();
+        }
+    }
+
+    /**
+     * Changes the current working directory asynchronously, on a single writer thread, so the caller does not wait for
+     * the lock, the validation or the native call. Relative paths are resolved now, against the current working
+     * directory. Requests that pile up while the writer is busy are coalesced: only the latest one is applied, the
+     * others are superseded.
+     *
+     * @param dir the new working directory
+     * @return a future, that completes with the working directory after the change. A superseded request completes
+     * with the working directory after the latest request. If the applied request fails, its own future completes
+     * exceptionally (e.g. with {@link IllegalArgumentException}), the superseded ones with the unchanged directory.
+     */
+    public CompletableFuture<String> changeDirAsync(String dir) {
+        return asyncDispatcher.get().submit(dir);
+    }
+
+    /**
+     * Changes the current working directory (just like {@link #changeDir(String)}), and returns a scope, that changes
+     * back to the previous one, when it is closed. The scopes of a thread form a stack (like <code>pushd</code> and
+     * <code>popd</code>), they have to be closed in reverse order. Changing back does not validate the previous
+     * directory again, it reuses the already checked state.
+     * <p>
+     * The working directory is global: if other threads change it in the meantime, closing the scope still changes back
+     * to the directory that was current at the time of this call.
+     *
+     * @param dir the new working directory
+     * @return the scope to close, to change back to the previous working directory
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws IllegalStateException if called from a thread with its own directory (see {@link #isolateCurrentThread()})
+     */
+    public DirScope push(String dir) {
+        ensureNotIsolated();
+        CwdSnapshot previous = offload != null && offload.shouldOffload() ? offload.call(() -> enter(dir)) : enter(dir);
+        DirScope scope = new DirScope(this, previous);
+        Deque<DirScope> stack = scopes.get();
+        if (stack == null) {
+            stack = new ArrayDeque<>();
+            scopes.set(stack);
+        }
+        stack.push(scope);
+        return scope;
+    }
+
+    /**
+     * Runs the task with the given working directory, and changes back to the previous one afterwards, even if the
+     * task fails. See {@link #push(String)}.
+     *
+     * @param dir the working directory to run the task in
+     * @param task the task to run
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws IllegalStateException if called from a thread with its own directory (see {@link #isolateCurrentThread()})
+     */
+    public void runIn(String dir, Runnable task) {
+        DirScope scope = push(dir);
+        try {
+            task.run();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Calls the task with the given working directory, and changes back to the previous one afterwards, even if the
+     * task fails. See {@link #push(String)}.
+     *
+     * @param dir the working directory to call the task in
+     * @param task the task to call
+     * @param <T> the type of the result
+     * @return the result of the task
+     * @throws Exception whatever the task throws
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws IllegalStateException if called from a thread with its own directory (see {@link #isolateCurrentThread()})
+     */
+    public <T> T callIn(String dir, Callable<T> task) throws Exception {
+        DirScope scope = push(dir);
+        try {
+            return task.call();
+        } finally {
+            scope.close();
+        }
+    }
+
+    /**
+     * Runs the task with its own working directory for NIO, without changing the process wide one: relative
+     * {@link Path}s used by the calling thread resolve against the given directory until the task ends. It takes no
+     * lock, so any number of threads can do it at the same time. A relative directory is resolved against the
+     * directory bound by an enclosing call, or the current working directory.
+     * Needs {@link ScopedCwdFileSystemProvider} installed as the default file system provider, {@link File} and
+     * native code are not affected.
+     *
+     * @param dir the working directory to run the task in
+     * @param task the task to run
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws IllegalStateException if {@link ScopedCwdFileSystemProvider} is not the default provider
+     */
+    public void withScopedDir(String dir, Runnable task) {
+        Path previous = ScopedCwdFileSystemProvider.bind(scopedTarget(dir));
+        try {
+            task.run();
+        } finally {
+            ScopedCwdFileSystemProvider.unbind(previous);
+        }
+    }
+
+    /**
+     * Calls the task with its own working directory for NIO, see {@link #withScopedDir(String, Runnable)}.
+     *
+     * @param dir the working directory to call the task in
+     * @param task the task to call
+     * @param <T> the type of the result
+     * @return the result of the task
+     * @throws Exception whatever the task throws
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws IllegalStateException if {@link ScopedCwdFileSystemProvider} is not the default provider
+     */
+    public <T> T withScopedDir(String dir, Callable<T> task) throws Exception {
+        Path previous = ScopedCwdFileSystemProvider.bind(scopedTarget(dir));
+        try {
+            return task.call();
+        } finally {
+            ScopedCwdFileSystemProvider.unbind(previous);
+        }
+    }
+
+    private String scopedTarget(String dir) {
+        if (!ScopedCwdFileSystemProvider.isInstalled()) {
+            throw new IllegalStateException("Scoped directories need -Djava.nio.file.spi.DefaultFileSystemProvider="
+                    + ScopedCwdFileSystemProvider.class.getName());
+        }
+        Path bound = ScopedCwdFileSystemProvider.boundDir();
+        return validate(bound != null ? bound.resolve(dir).toString() : dir).dir();
+    }
+
+    void pop(DirScope scope) {
+        Deque<DirScope> stack = scopes.get();
+        if (stack == null || stack.peek() != scope) {
+            throw new IllegalStateException("Directory scopes have to be closed in reverse order of push");
+        }
+        stack.pop();
+        if (stack.isEmpty()) {
+            scopes.remove();
+        }
+    }
+
+    private CwdSnapshot enter(String dir) {
+        acquireLock();
+        try {
+            CwdSnapshot previous = current;
+            changeDirLocked(dir);
+            return previous;
+        } finally {
+            unlockAndNotify();
+        }
+    }
+
+    void restore(CwdSnapshot previous) {
+        switchValidated(previous, null);
+    }
+
+    /**
+     * Switches to an already validated directory: no path checks, no encoding, the native form is used if prepared.
+     */
+    private void switchValidated(CwdSnapshot target, Object prepared) {
+        if (offload != null && offload.shouldOffload()) {
+            offload.run(() -> switchValidated(target, prepared));
+            return;
+        }
+        acquireLock();
+        ChangePhases phases = ChangePhases.start(stats != null);
+        String from = current.dir();
+        boolean failed = true;
+        try {
+            if (nativeFirst) {
+                long nativeStart = phases.startPhase();
+                NativeResult result = nativeChangeDir.changeDirPrepared(target.dir(), prepared);
+                phases.endNative(nativeStart, result);
+                if (!result.isSuccess()) {
+                    throw new IllegalStateException("Can not change directory to: " + target.dir() + ", " + result.describe());
+                }
+                timedCommit(target, phases);
+            } else {
+                timedCommit(target, phases);
+                long nativeStart = phases.startPhase();
+                NativeResult result = prepared == null
+                        ? (nativeChangeDir.changeDir(target.dir()) ? NativeResult.success() : NativeResult.unknownFailure())
+                        : nativeChangeDir.changeDirPrepared(target.dir(), prepared);
+                phases.endNative(nativeStart, result);
+                if (!result.isSuccess()) {
+                    LOG.log(logLevel, "Can not change native directory");
+                }
+            }
+            failed = false;
+        } finally {
+            unlockAndNotify();
+            commitEvent(phases, from, target.dir(), failed);
+        }
+    }
+
+    /**
+     * Takes the lock without waiting, if it is free. Otherwise the wait is recorded as a {@link ChangeDirLockWaitEvent}
+     * (if JFR is available).
+     */
+    private void acquireLock() {
+        if (lock.tryLock()) {
+            return;
+        }
+        ChangeDirLockWaitEvent event = null;
+        if (OptionalModules.JFR) {
+            event = new ChangeDirLockWaitEvent();
+            event.begin();
+        }
+        long waitStart = stats != null ? System.nanoTime() : 0L;
+        lock.lock();
+        if (stats != null) {
+            stats.recordLockWait(System.nanoTime() - waitStart);
+        }
+        if (event != null) {
+            event.commit();
+        }
+    }
+
+    /**
+     * Releases the lock, then lets the listeners know about the directory. They are never notified under the lock.
+     */
+    private void unlockAndNotify() {
+        lock.unlock();
+        listeners.publish(current.dir());
+    }
+
+    private void ensureNotIsolated() {
+        if (threadDirs.get() != null) {
+            throw new IllegalStateException("This thread has its own working directory, use changeThreadDir instead");
+        }
+    }
+
+    private void changeDirLocked(String dir) {
+        ChangePhases phases = ChangePhases.start(stats != null);
+        String from = current.dir();
+        boolean failed = true;
+        try {
+            if (nativeFirst) {
+                changeNativeFirst(dir, phases);
+            } else {
+                long validationStart = phases.startPhase();
+                CwdSnapshot snapshot = validate(dir);
+                phases.endValidation(validationStart);
+                timedCommit(snapshot, phases);
+                long nativeStart = phases.startPhase();
+                NativeResult result = nativeChangeDir.changeDir(snapshot.dir()) ? NativeResult.success() : NativeResult.unknownFailure();
+                phases.endNative(nativeStart, result);
+                if(!result.isSuccess()) {
+                    LOG.log(logLevel, "Can not change native directory");
+                }
+            }
+            failed = false;
+        } finally {
+            // still under the lock: current is the directory this change has set
+            commitEvent(phases, from, failed ? dir : current.dir(), failed);
+        }
+    }
+
+    private void timedCommit(CwdSnapshot snapshot, ChangePhases phases) {
+        long commitStart = phases.startPhase();
+        commit(snapshot);
+        phases.endCommit(commitStart);
+    }
+
+    private void commitEvent(ChangePhases phases, String from, String to, boolean failed) {
+        if (stats != null) {
+            stats.recordChange(phases, failed);
+        }
+        phases.commitEvent(from, to, nativeChangeDir.getClass().getName());
+    }
+
+    private void changeNativeFirst(String dir, ChangePhases phases) {
+        CwdSnapshot previous = current;
+        String absolute = new File(dir).getAbsolutePath();
+        CwdSnapshot cached = pathCache == null ? null : pathCache.get(absolute);
+        long nativeStart = phases.startPhase();
+        NativeResult result = nativeChangeDir.changeDirWithResult(cached != null ? cached.dir() : absolute);
+        phases.endNative(nativeStart, result);
+        if (!result.isSuccess()) {
+            throw new IllegalArgumentException("Can not change directory to: " + dir + ", " + result.describe());
+        }
+        try {
+            long validationStart = phases.startPhase();
+            CwdSnapshot snapshot = cached != null ? cached : new CwdSnapshot(canonicalize(absolute));
+            phases.endValidation(validationStart);
+            timedCommit(snapshot, phases);
+            if (pathCache != null && cached == null) {
+                pathCache.put(absolute, snapshot);
+            }
+        } catch (RuntimeException e) {
+            nativeChangeDir.changeDir(previous.dir());
+            throw e;
+        }
+    }
+
+    private void commit(CwdSnapshot snapshot) {
+        if (snapshot.dir().equals(current.dir())) {
+            return;
+        }
+        System.setProperty("user.dir", snapshot.dir());
+        FileSystemFields.write(snapshot);
+        current = snapshot;
+    }
+
+    /**
+     * Gives the calling platform thread its own native working directory (on Linux through <code>unshare(CLONE_FS)</code>).
+     * It starts from the current working directory, and can be changed with {@link #changeThreadDir(String)} without
+     * taking the global lock and without effecting any other thread. Only native code (and processes started from
+     * this thread) see it, the JVM level <code>user.dir</code>, {@link File} and {@link Path} resolution stays global.
+     * The thread keeps its own directory until it ends, so it is best used for the workers of a dedicated pool, see
+     * {@link #isolatingThreadFactory(ThreadFactory)}.
+     *
+     * @return <code>true</code> if the thread has its own working directory, <code>false</code> if the native backend
+     * does not support it.
+     * @throws IllegalStateException if called from a virtual thread
+     */
+    public boolean isolateCurrentThread() {
+        if (threadDirs.get() != null) {
+            return true;
+        }
+        if (ThreadUtil.isVirtual(Thread.currentThread())) {
+            throw new IllegalStateException("Virtual threads can not have their own working directory");
+        }
+        acquireLock();
+        try {
+            if (!nativeChangeDir.isolateThread()) {
+                return false;
+            }
+            threadDirs.set(current);
+            return true;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Creates a {@link ThreadFactory}, which isolates (see {@link #isolateCurrentThread()}) every thread it creates,
+     * before running their task.
+     *
+     * @param delegate the factory to actually create the threads with
+     * @return an isolating thread factory
+     * @throws UnsupportedOperationException in case the native backend can not isolate threads
+     */
+    public ThreadFactory isolatingThreadFactory(ThreadFactory delegate) {
+        if (!nativeChangeDir.supportsThreadIsolation()) {
+            throw new UnsupportedOperationException("Native backend can not isolate threads: " + nativeChangeDir.getClass().getName());
+        }
+        return task -> delegate.newThread(() -> {
+            if (!isolateCurrentThread()) {
+                throw new IllegalStateException("Could not isolate thread: " + Thread.currentThread().getName());
+            }
+            task.run();
+        });
+    }
+
+    /**
+     * Changes the native working directory of the calling, isolated thread. Relative paths are resolved against the
+     * thread's own directory. It does not take the global lock and does not change the JVM level current directory.
+     *
+     * @param dir the new working directory of the thread
+     * @throws IllegalStateException if the thread is not isolated, or the native change has failed
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     */
+    public void changeThreadDir(String dir) {
+        CwdSnapshot threadDir = threadDirs.get();
+        if (threadDir == null) {
+            throw new IllegalStateException("This thread does not have its own working directory, call isolateCurrentThread first");
+        }
+        File file = new File(dir);
+        String toSet = ensureAbsolutePathToValidFolder(file.isAbsolute() ? file : new File(threadDir.file(), dir));
+        NativeResult result = nativeChangeDir.changeDirWithResult(toSet);
+        if (!result.isSuccess()) {
+            throw new IllegalStateException("Can not change native directory of thread to: " + toSet + ", " + result.describe());
+        }
+        threadDirs.set(new CwdSnapshot(toSet));
+    }
+
+    /**
+     * Returns the working directory of the calling thread: its own one, if it is isolated, the global one otherwise.
+     *
+     * @return absolute path of the thread's working directory
+     */
+    public String getThreadCWD() {
+        CwdSnapshot threadDir = threadDirs.get();
+        return threadDir != null ? threadDir.dir() : getCWD();
+    }
+
+    private CwdSnapshot validate(String dir) {
+        if (pathCache == null) {
+            return new CwdSnapshot(ensureAbsolutePathToValidFolder(new File(dir)));
+        }
+        String absolute = new File(dir).getAbsolutePath();
+        CwdSnapshot cached = pathCache.get(absolute);
+        if (cached != null) {
+            // the watcher reports a deletion late, and nothing native would notice it here
+            if (cached.file().isDirectory()) {
+                return cached;
+            }
+            pathCache.remove(absolute);
+        }
+        CwdSnapshot validated = new CwdSnapshot(ensureAbsolutePathToValidFolder(new File(absolute)));
+        pathCache.put(absolute, validated);
+        return validated;
+    }
+
+    private static String canonicalize(String absolute) {
+        try {
+            return new File(absolute).getCanonicalPath();
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Can not use path: "+absolute, ioe);
+        }
+    }
+
+    private static String ensureAbsolutePathToValidFolder(File dir) {
+        try {
+            File absCanonFile = dir.getCanonicalFile().getAbsoluteFile();
+            if(!absCanonFile.exists()) {
+                throw new IllegalArgumentException("You can not set current working directory to a non existing folder");
+            }
+            if(!absCanonFile.isDirectory()) {
+                throw new IllegalArgumentException("You can not set current working directory to a regular file");
+            }
+            return absCanonFile.getPath();
+        } catch (IOException ioe) {
+            throw new IllegalArgumentException("Can not use path: "+dir, ioe);
+        }
+    }
+
+    /**
+     * Validates a directory once, and prepares everything a switch to it needs (see {@link DirHandle}). Use it for
+     * directories you switch to many times, with {@link #changeDir(DirHandle)}.
+     *
+     * @param dir the directory to prepare, relative paths are resolved against the current working directory
+     * @return the prepared directory
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     */
+    public DirHandle prepare(String dir) {
+        CwdSnapshot snapshot = new CwdSnapshot(ensureAbsolutePathToValidFolder(new File(dir)));
+        return new DirHandle(snapshot, nativeChangeDir.prepare(snapshot.dir()));
+    }
+
+    /**
+     * Validates a directory once, and prepares everything a switch to it needs. See {@link #prepare(String)}.
+     *
+     * @param path the directory to prepare
+     * @return the prepared directory
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     */
+    public DirHandle prepare(Path path) {
+        return prepare(path.toAbsolutePath().toString());
+    }
+
+    /**
+     * Changes the current working directory to a prepared one. The directory is not checked again, the validated and
+     * encoded forms of the handle are used, so the switch does not allocate. This method is thread-safe.
+     *
+     * @param handle the new working directory, prepared by {@link #prepare(String)}
+     * @throws IllegalStateException if called from a thread with its own directory (see {@link #isolateCurrentThread()}),
+     * or if the native backend reports a failure (e.g. the directory has been deleted since it was prepared)
+     */
+    public void changeDir(DirHandle handle) {
+        ensureNotIsolated();
+        switchValidated(handle.snapshot(), handle.nativeForm());
+    }
+
+    /**
+     * Changes the current working directory to the one given directory. At first it turns the directory into an absolute path, if possible.
+     * This method is thread-safe.
+     *
+     * @param file the new working directory
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws RuntimeException if can not change specified fields of underlying FileSystem abstraction
+     */
+    public void changeDir(File file) {
+        changeDir(file.getAbsolutePath());
+    }
+
+    /**
+     * Changes the current working directory to the one given directory. At first it turns the directory into an absolute path, if possible.
+     * This method is thread-safe.
+     *
+     * @param path the new working directory
+     * @throws IllegalArgumentException in case the specified directory is not available, does not exisits, or not a directory
+     * @throws RuntimeException if can not change specified fields of underlying FileSystem abstraction
+     */
+    public void changeDir(Path path) {
+        changeDir(path.toAbsolutePath().toString());
+    }
+
+    /**
+     * Returns the current working directory as String
+     * This method is thread-safe, lock-free and does not allocate.
+     *
+     * @return absolute path of current working directory
+     */
+    public String getCWD() {
+        return current.dir();
+    }
+
+    /**
+     * Returns the current working directory as an absolute path
+     * This method is thread-safe, lock-free and does not allocate: the same instance is returned until the next change.
+     *
+     * @return the absolute file of current working directory.
+     */
+    public File getCWDFile() {
+        return current.file();
+    }
+
+    /**
+     * Returns the current working directory as an absolute path.
+     * This method is thread-safe, lock-free and does not allocate: the same instance is returned until the next change.
+     *
+     * @return the absolute path of the current working directory.
+     */
+    public Path getCWDPath() {
+        return current.path();
+    }
+
+    /**
+     * Reads the working directory from every layer: <code>user.dir</code>, the directory {@link File} and {@link Path}
+     * resolve against, and the native one (if the backend can read it, see {@link NativeChangeDir#getCwd()}), and
+     * compares them with the one set last. It waits for a directory change in progress to finish.
+     *
+     * @return the directories of each layer
+     * @throws IllegalStateException if called from a thread with its own directory (see {@link #isolateCurrentThread()})
+     */
+    public CwdVerification verify() {
+        ensureNotIsolated();
+        readLock.lock();
+        try {
+            return new CwdVerification(current.dir(), System.getProperty("user.dir"), FileSystemFields.readFileUserDir(),
+                    FileSystemFields.readNioDefaultDir(), nativeChangeDir.getCwd());
+        } finally {
+            readLock.unlock();
+        }
+    }
+
+    /**
+     * Sets the working directory again everywhere: <code>user.dir</code>, {@link File}, {@link Path} and the native
+     * working directory. It is meant for after a restore from a checkpoint (it is called automatically, if the CRaC API
+     * is available, see the README), or after native code changed directory behind {@link ChangeDir}'s back.
+     * Cached native handles and validated directories are forgotten. If the current directory is gone, the native
+     * working directory of the process is adopted instead.
+     *
+     * @return the working directory after the re-sync
+     */
+    public String resync() {
+        ensureNotIsolated();
+        if (offload != null && offload.shouldOffload()) {
+            return offload.call(this::resync);
+        }
+        acquireLock();
+        try {
+            nativeChangeDir.reset();
+            if (pathCache != null) {
+                pathCache.invalidateAll();
+                pathCache.resume();
+            }
+            CwdSnapshot target = current;
+            if (!target.file().isDirectory()) {
+                String nativeDir = nativeChangeDir.getCwd();
+                if (nativeDir != null) {
+                    LOG.log(logLevel, "Working directory is gone: " + target.dir() + ", adopting native: " + nativeDir);
+                    target = new CwdSnapshot(nativeDir);
+                }
+            }
+            if (!nativeChangeDir.changeDir(target.dir())) {
+                LOG.log(logLevel, "Can not change native directory");
+            }
+            System.setProperty("user.dir", target.dir());
+            FileSystemFields.write(target);
+            current = target;
+            return target.dir();
+        } finally {
+            unlockAndNotify();
+        }
+    }
+
+    /**
+     * Releases native resources, that should not be part of a checkpoint (open directory handles, and the watch service
+     * of the path cache). {@link #resync()} acquires them again.
+     */
+    void beforeCheckpoint() {
+        acquireLock();
+        try {
+            nativeChangeDir.reset();
+            if (pathCache != null) {
+                pathCache.suspend();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Registers a listener, that is called after the working directory has changed. Listeners are called
+     * asynchronously, on a dedicated daemon thread, after the change is complete and the lock is released. Bursts of
+     * changes are coalesced, so a slow listener only sees the latest directory. A failing listener is logged, and
+     * stays registered.
+     *
+     * @param listener the listener to call
+     */
+    public void addListener(CwdListener listener) {
+        if (listener == null) {
+            throw new IllegalArgumentException("Listener can not be null");
+        }
+        listeners.add(listener, current.dir());
+    }
+
+    /**
+     * Removes a listener registered by {@link #addListener(CwdListener)}. A notification already scheduled may still
+     * reach it.
+     *
+     * @param listener the listener to remove
+     * @return <code>true</code> if it was registered
+     */
+    public boolean removeListener(CwdListener listener) {
+        return listeners.remove(listener);
+    }
+
+    /**
+     * Returns the statistics of directory changes, the same ones, that are registered as a platform MBean.
+     *
+     * @return the statistics, or empty if {@link ChdirConfig#stats()} is not set
+     */
+    public Optional<ChangeDirStatsMXBean> getStats() {
+        return Optional.ofNullable(stats);
+    }
+}
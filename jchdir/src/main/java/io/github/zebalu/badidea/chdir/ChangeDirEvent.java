@@ -0,0 +1,80 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event of a global directory change (including the change back of a {@link DirScope}). Its duration does not
+ * contain the time spent waiting for the lock, that is a {@link ChangeDirLockWaitEvent}. The phases are timed by
+ * {@link ChangePhases}, that also feed {@link ChangeDirStats}. Only created, if <code>jdk.jfr</code> is available.
+ */
+@Name("io.github.zebalu.badidea.chdir.ChangeDir")
+@Label("Change Directory")
+@Category("jchdir")
+@Description("Change of the JVM's working directory")
+final class ChangeDirEvent extends jdk.jfr.Event {
+
+    @Label("From")
+    String from;
+
+    @Label("To")
+    @Description("The new working directory, or the requested one, if the change has failed")
+    String to;
+
+    @Label("Backend")
+    String backend;
+
+    @Label("Native Result")
+    String nativeResult;
+
+    @Label("Validation Duration")
+    @Description("Time spent checking and canonicalising the path (zero, if it was cached or reused)")
+    @Timespan
+    long validationDuration;
+
+    @Label("Commit Duration")
+    @Description("Time spent setting user.dir and the file system fields")
+    @Timespan
+    long commitDuration;
+
+    @Label("Native Duration")
+    @Description("Time spent in the native backend")
+    @Timespan
+    long nativeDuration;
+
+    /**
+     * Ends the event, and commits it with the phases of the change, if it is recorded.
+     */
+    void record(ChangePhases phases, String from, String to, String backend) {
+        end();
+        if (shouldCommit()) {
+            this.from = from;
+            this.to = to;
+            this.backend = backend;
+            nativeResult = phases.result == null ? "Not called" : phases.result.describe();
+            validationDuration = phases.validationDuration;
+            commitDuration = phases.commitDuration;
+            nativeDuration = phases.nativeDuration;
+            commit();
+        }
+    }
+}
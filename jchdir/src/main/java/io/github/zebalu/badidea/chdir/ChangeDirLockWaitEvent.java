@@ -0,0 +1,32 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of a thread waiting for the global lock of {@link ChangeDir}. It is only created, if the lock was not free.
+ */
+@Name("io.github.zebalu.badidea.chdir.ChangeDirLockWait")
+@Label("Change Directory Lock Wait")
+@Category("jchdir")
+@Description("Time spent waiting for the lock, that guards the working directory")
+final class ChangeDirLockWaitEvent extends jdk.jfr.Event {
+}
@@ -0,0 +1,152 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.lang.System.Logger.Level;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms of {@link ChangeDir}. Recording is lock-free and does not allocate.
+ */
+final class ChangeDirStats implements ChangeDirStatsMXBean {
+    private static final System.Logger LOG = System.getLogger(ChangeDirStats.class.getName());
+
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder nativeFailures = new LongAdder();
+    private final LongAdder lockContentions = new LongAdder();
+    private final LatencyHistogram validation = new LatencyHistogram();
+    private final LatencyHistogram commit = new LatencyHistogram();
+    private final LatencyHistogram nativeCall = new LatencyHistogram();
+    private final LatencyHistogram lockWait = new LatencyHistogram();
+
+    private ChangeDirStats() {
+    }
+
+    /**
+     * Creates and registers the statistics, if they are enabled. Without <code>java.management</code> they are only
+     * available from {@link ChangeDir#getStats()}.
+     * @param enabled {@link ChdirConfig#stats()}
+     * @param logLevel the level to log a failed registration on
+     * @return the statistics, or <code>null</code> if disabled
+     */
+    static ChangeDirStats create(boolean enabled, Level logLevel) {
+        if (!enabled) {
+            return null;
+        }
+        ChangeDirStats stats = new ChangeDirStats();
+        if (OptionalModules.MANAGEMENT) {
+            Registration.register(stats, logLevel);
+        } else {
+            LOG.log(logLevel, "Statistics are collected, but java.management is not available to register their MBean");
+        }
+        return stats;
+    }
+
+    void recordChange(ChangePhases phases, boolean failed) {
+        NativeResult result = phases.result;
+        changes.increment();
+        if (failed) {
+            failures.increment();
+        }
+        if (result != null && !result.isSuccess()) {
+            nativeFailures.increment();
+        }
+        if (phases.validationDuration != 0L) {
+            validation.record(phases.validationDuration);
+        }
+        if (phases.commitDuration != 0L) {
+            commit.record(phases.commitDuration);
+        }
+        if (result != null) {
+            nativeCall.record(phases.nativeDuration);
+        }
+    }
+
+    void recordLockWait(long nanos) {
+        lockContentions.increment();
+        lockWait.record(nanos);
+    }
+
+    @Override
+    public long getChanges() {
+        return changes.sum();
+    }
+
+    @Override
+    public long getFailures() {
+        return failures.sum();
+    }
+
+    @Override
+    public long getNativeFailures() {
+        return nativeFailures.sum();
+    }
+
+    @Override
+    public long getLockContentions() {
+        return lockContentions.sum();
+    }
+
+    @Override
+    public PhaseLatency getValidationLatency() {
+        return validation.snapshot();
+    }
+
+    @Override
+    public PhaseLatency getCommitLatency() {
+        return commit.snapshot();
+    }
+
+    @Override
+    public PhaseLatency getNativeLatency() {
+        return nativeCall.snapshot();
+    }
+
+    @Override
+    public PhaseLatency getLockWaitLatency() {
+        return lockWait.snapshot();
+    }
+
+    @Override
+    public void reset() {
+        changes.reset();
+        failures.reset();
+        nativeFailures.reset();
+        lockContentions.reset();
+        validation.reset();
+        commit.reset();
+        nativeCall.reset();
+        lockWait.reset();
+    }
+
+    /**
+     * Touches <code>java.management</code>, only loaded if it is available.
+     */
+    private static final class Registration {
+        private static void register(ChangeDirStats stats, Level logLevel) {
+            try {
+                ManagementFactory.getPlatformMBeanServer().registerMBean(stats, new ObjectName(OBJECT_NAME));
+            } catch (JMException | RuntimeException e) {
+                LOG.log(logLevel, "Can not register statistics MBean, they are still collected", e);
+            }
+        }
+    }
+}
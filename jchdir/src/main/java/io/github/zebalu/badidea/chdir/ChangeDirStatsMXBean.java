@@ -0,0 +1,83 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * Statistics of {@link ChangeDir}, registered as a platform MBean with the name {@value #OBJECT_NAME}, if
+ * {@link ChdirConfig#stats()} is set. Counters are totals since start (or the last {@link #reset()}), latencies are
+ * measured in nanoseconds, and bucketed, so percentiles are accurate to 25%.
+ */
+public interface ChangeDirStatsMXBean {
+
+    /** The name the statistics are registered with. Value: {@value #OBJECT_NAME} */
+    String OBJECT_NAME = "io.github.zebalu.badidea.chdir:type=ChangeDirStats";
+
+    /**
+     * Number of global directory changes (including the change backs of {@link DirScope}s), successful or not.
+     * @return the number of changes
+     */
+    long getChanges();
+
+    /**
+     * Number of directory changes, that have thrown an exception.
+     * @return the number of failed changes
+     */
+    long getFailures();
+
+    /**
+     * Number of native calls, that have failed. In case the backend does not report <code>errno</code>, the change
+     * itself is still successful.
+     * @return the number of failed native calls
+     */
+    long getNativeFailures();
+
+    /**
+     * Number of times a thread had to wait for the global lock.
+     * @return the number of contended lock acquisitions
+     */
+    long getLockContentions();
+
+    /**
+     * Time spent checking and canonicalising the path (or finding it in the path cache). Restored directories are not
+     * validated, so they are not counted here.
+     * @return the latencies of validation
+     */
+    PhaseLatency getValidationLatency();
+
+    /**
+     * Time spent setting <code>user.dir</code> and the file system fields.
+     * @return the latencies of the commit
+     */
+    PhaseLatency getCommitLatency();
+
+    /**
+     * Time spent in the native backend.
+     * @return the latencies of the native calls
+     */
+    PhaseLatency getNativeLatency();
+
+    /**
+     * Time spent waiting for the global lock, only when it was not free.
+     * @return the latencies of lock waits
+     */
+    PhaseLatency getLockWaitLatency();
+
+    /**
+     * Sets all counters and latencies back to zero.
+     */
+    void reset();
+}
@@ -0,0 +1,93 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * Phase timings and native result of one directory change. They feed {@link ChangeDirStats}, and the
+ * {@link ChangeDirEvent} of the change, if JFR is available. The phases are only timed, when the event is enabled or
+ * statistics are collected.
+ */
+final class ChangePhases {
+
+    /** The JFR event of the change, <code>null</code> if <code>jdk.jfr</code> is not available. */
+    private final ChangeDirEvent event;
+    private final boolean timed;
+
+    /** The result of the native call, <code>null</code> if it was not called. */
+    NativeResult result;
+    long validationDuration;
+    long commitDuration;
+    long nativeDuration;
+
+    private ChangePhases(ChangeDirEvent event, boolean timed) {
+        this.event = event;
+        this.timed = timed;
+    }
+
+    /**
+     * Starts a change, and the JFR event of it.
+     * @param stats whether statistics are collected
+     * @return the phases of the new change
+     */
+    static ChangePhases start(boolean stats) {
+        if (!OptionalModules.JFR) {
+            return new ChangePhases(null, stats);
+        }
+        ChangeDirEvent event = new ChangeDirEvent();
+        event.begin();
+        return new ChangePhases(event, stats || event.isEnabled());
+    }
+
+    /**
+     * Starts timing a phase.
+     * @return the current time, or 0 if phases are not timed
+     */
+    long startPhase() {
+        return timed ? System.nanoTime() : 0L;
+    }
+
+    void endValidation(long start) {
+        if (start != 0L) {
+            validationDuration += System.nanoTime() - start;
+        }
+    }
+
+    void endCommit(long start) {
+        if (start != 0L) {
+            commitDuration += System.nanoTime() - start;
+        }
+    }
+
+    void endNative(long start, NativeResult result) {
+        this.result = result;
+        if (start != 0L) {
+            nativeDuration += System.nanoTime() - start;
+        }
+    }
+
+    /**
+     * Ends the JFR event of the change, and commits it, if it is recorded.
+     * @param from the directory before the change
+     * @param to the directory after the change, or the requested one, if the change has failed
+     * @param backend the class name of the native backend
+     */
+    void commitEvent(String from, String to, String backend) {
+        if (event != null) {
+            event.record(this, from, to, backend);
+        }
+    }
+}
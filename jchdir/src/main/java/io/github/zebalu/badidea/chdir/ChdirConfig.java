@@ -1,227 +1,447 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir;
-
-import java.io.File;
-import java.io.FileReader;
-import java.io.FileWriter;
-import java.io.IOException;
-import java.lang.System.Logger.Level;
-import java.nio.charset.StandardCharsets;
-import java.util.Properties;
-import java.util.function.Consumer;
-
-/**
- * Holds the configuration instance of the JCHDIR settings.
- * It can be configured with:
- * <ol>
- *     <li>nothing: default config</li>
- *     <li>a central file: ~/.jchdir.rc</li>
- *     <li>system wide environment properties</li>
- *     <li>jvm properties</li>
- * </ol>
- *
- * The strength order is: nothing (weakest) --&gt; to --&gt; jvm properties (strognest) as that one is directly linked to the started JVM.
- */
-public final class ChdirConfig {
-
-    /** The file it is used to load user settings from. Value: <code>~/.jchdir.rc</code>*/
-    public static final File CONFIG_FILE = new File(new File(System.getProperty("user.home")), ".jchdir.rc");
-
-    /** the key in config properties object to set log level. Value: {@value #PROPS_LOG_LEVEL} */
-    public static final String PROPS_LOG_LEVEL = "logLevel";
-    /** the key in config properties object to set lock fairness. Valu: {@value #PROPS_FAIR_LOCK} */
-    public static final String PROPS_FAIR_LOCK = "fairLock";
-
-    /** JVM property to set log level. Value: {@value #JVM_JCHDIR_LOG_LEVEL} */
-    public static final String JVM_JCHDIR_LOG_LEVEL = "jchdir.logLevel";
-
-    /** JVM property to set lock fairness. Value: {@value #JVM_JCHDIR_FAIR_LOCK} */
-    public static final String JVM_JCHDIR_FAIR_LOCK = "jchdir.fairLock";
-
-    /**Environment variable name to set log level. Value: {@value #SYSTEM_JCHDIR_LOGLEVEL} */
-    public static final String SYSTEM_JCHDIR_LOGLEVEL = "JCHDIR_LOGLEVEL";
-    /** Environment variable name to set fairness. Value: {@value #SYSTEM_JCHDIR_FAIRLOCK}*/
-    public static final String SYSTEM_JCHDIR_FAIRLOCK = "JCHDIR_FAIRLOCK";
-
-    private static ChdirConfig lazy_instance;
-
-    private static String initialisationStackTrace;
-
-    /**
-     * Gets the ChdirConfig instance. Initialises it, if needed.
-     * This method is thread-safe, always returns a value, and idempotent.
-     *
-     * @return the ChdirConfig instance.
-     */
-    public static ChdirConfig getInstance() {
-        return getInstanceWithConfig(null);
-    }
-
-    /**
-     * Trys to initialise a config with a custom setting. The config can only be initialised once / JVM.
-     * @param config this lambda gets the current properties (merged default, user, env, and jvm properties) and can modify it.
-     *               The modified object is then used to initialise a config. In case it is <code>null</code> behaves like getInstance.
-     * @return the ChdirConfig instance
-     * @throws IllegalStateException in case config is not null, and instance is already initialised
-     */
-    public static ChdirConfig getInstanceWithConfig(Consumer<Properties> config) {
-        synchronized (ChdirConfig.class) {
-            if (lazy_instance == null) {
-                saveInitialisationStackTrace();
-                Properties defaults = mergeAllProperties();
-                if(config != null) {
-                    config.accept(defaults);
-                }
-                lazy_instance = createFromProperties(defaults);
-                return lazy_instance;
-            } else if(config != null) {
-                throw new IllegalStateException("Instance was already configured with stack trace: \n"+initialisationStackTrace);
-            } else {
-                return lazy_instance;
-            }
-        }
-    }
-
-    private final Level logLevel;
-    private final boolean fairLock;
-
-    private ChdirConfig(final Level logLevel, final boolean fairLock) {
-        this.logLevel = logLevel;
-        this.fairLock = fairLock;
-    }
-
-    /**
-     * Returns the log level we want ot see {@link ChangeDir} logs on.
-     * @return The requested log elvel. {@link Level#DEBUG} yb default.
-     */
-    public Level logLevel() {
-        return logLevel;
-    }
-
-    /**
-     * Determines to use a fair or unfair lock.
-     * @return <code>false</code> by default.
-     */
-    public boolean fairLock() {
-        return fairLock;
-    }
-
-    /**
-     * Saves the current setup as user settings to ~/.jchdir.rc
-     * @throws IOException in case it can not write the file
-     */
-    public void saveAsUserSettings() throws IOException {
-        Properties currentProperties = new Properties();
-        currentProperties.setProperty(PROPS_LOG_LEVEL, logLevel.toString());
-        currentProperties.setProperty(PROPS_FAIR_LOCK, Boolean.toString(fairLock));
-        synchronized (ChdirConfig.class) {
-            try (FileWriter fw = new FileWriter(CONFIG_FILE)) {
-                currentProperties.store(fw, "saved from stacktrace:\n"+createStackTraceString(2));
-            }
-        }
-    }
-
-    private static void saveInitialisationStackTrace() {
-        initialisationStackTrace = createStackTraceString(3);
-    }
-
-    private static String createStackTraceString(int skipElements) {
-        int counter = 1;
-        StringBuilder sb = new StringBuilder();
-        StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
-        for(int i=skipElements; i<stackTraceElements.length; i++) {
-            sb.append("\t\t");
-            sb.append(counter);
-            sb.append(".\t");
-            sb.append(stackTraceElements[i]);
-            sb.append("\n");
-            ++counter;
-        }
-        return sb.toString();
-    }
-
-    private static Properties mergeAllProperties() {
-        Properties props = createDefaultProps();
-        loadUserConfgis(props);
-        loadEnvironmentSettings(props);
-        loadJvmProperties(props);
-        return props;
-    }
-
-    private static ChdirConfig createFromProperties(Properties props) {
-        Level logLevel = Level.valueOf(props.getProperty(PROPS_LOG_LEVEL));
-        boolean fairLock = Boolean.parseBoolean(props.getProperty(PROPS_FAIR_LOCK));
-        return new ChdirConfig(logLevel, fairLock);
-    }
-
-    /**
-     * Reads the strongest config: jvm properties.
-     * @param props the properties to update.
-     */
-    private static void loadJvmProperties(Properties props) {
-        loadJvmProperty(props, JVM_JCHDIR_LOG_LEVEL, PROPS_LOG_LEVEL);
-        loadJvmProperty(props, JVM_JCHDIR_FAIR_LOCK, PROPS_FAIR_LOCK);
-    }
-
-    private static void loadJvmProperty(Properties props, String jvmPorpKey, String storePropKey) {
-        if (System.getProperties().containsKey(jvmPorpKey)) {
-            props.setProperty(storePropKey, System.getProperty(jvmPorpKey));
-        }
-    }
-
-    /**
-     * Overrides the config with the settings from the environment variables.
-     * @param props the properties to update
-     */
-    private static void loadEnvironmentSettings(Properties props) {
-        loadEnvironmentSetting(props, SYSTEM_JCHDIR_LOGLEVEL, PROPS_LOG_LEVEL);
-        loadEnvironmentSetting(props, SYSTEM_JCHDIR_FAIRLOCK, PROPS_FAIR_LOCK);
-    }
-
-    private static void loadEnvironmentSetting(Properties props, String envKey, String propsKey) {
-        if(System.getenv().containsKey(envKey)) {
-            props.setProperty(propsKey, System.getenv(envKey));
-        }
-    }
-
-    /**
-     * Overrides default values with user's own configuration from ~/.jchdir.rc if exists.
-     *
-     * @param props The properties object to update with the loaded config
-     */
-    private static void loadUserConfgis(Properties props) {
-        if(CONFIG_FILE.exists()) {
-            try (FileReader reader = new FileReader(CONFIG_FILE, StandardCharsets.UTF_8)) {
-                props.load(reader);
-            } catch (IOException ioe) {
-                System.getLogger(ChdirConfig.class.getName()).log(Level.INFO, "Can not load config file: "+CONFIG_FILE.getAbsolutePath(), ioe);
-            }
-        }
-    }
-
-    /**
-     * Creates the default config values. This is the weakest config.
-     * @return a {@link Properties} object with all values set to the default values as Strign
-     */
-    private static Properties createDefaultProps() {
-        Properties props = new Properties();
-        props.setProperty(PROPS_LOG_LEVEL, "DEBUG");
-        props.setProperty(PROPS_FAIR_LOCK, "false");
-        return props;
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.Properties;
+import java.util.function.Consumer;
+
+/**
+ * Holds the configuration instance of the JCHDIR settings.
+ * It can be configured with:
+ * <ol>
+ *     <li>nothing: default config</li>
+ *     <li>a central file: ~/.jchdir.rc</li>
+ *     <li>system wide environment properties</li>
+ *     <li>jvm properties</li>
+ * </ol>
+ *
+ * The strength order is: nothing (weakest) --&gt; to --&gt; jvm properties (strognest) as that one is directly linked to the started JVM.
+ */
+public final class ChdirConfig {
+
+    /** The file it is used to load user settings from. Value: <code>~/.jchdir.rc</code>*/
+    public static final File CONFIG_FILE = new File(new File(System.getProperty("user.home")), ".jchdir.rc");
+
+    /** the key in config properties object to set log level. Value: {@value #PROPS_LOG_LEVEL} */
+    public static final String PROPS_LOG_LEVEL = "logLevel";
+    /** the key in config properties object to set lock fairness. Valu: {@value #PROPS_FAIR_LOCK} */
+    public static final String PROPS_FAIR_LOCK = "fairLock";
+    /** the key in config properties object to set the size of the directory handle cache. Value: {@value #PROPS_FD_CACHE_SIZE} */
+    public static final String PROPS_FD_CACHE_SIZE = "fdCacheSize";
+    /** the key in config properties object to set the size of the validated path cache. Value: {@value #PROPS_PATH_CACHE_SIZE} */
+    public static final String PROPS_PATH_CACHE_SIZE = "pathCacheSize";
+    /** the key in config properties object to set the pinned native backend. Value: {@value #PROPS_BACKEND} */
+    public static final String PROPS_BACKEND = "backend";
+    /** the key in config properties object to set the directory of the preinstalled JNI library. Value: {@value #PROPS_JNI_LIB_DIR} */
+    public static final String PROPS_JNI_LIB_DIR = "jniLibDir";
+    /** the key in config properties object to set collecting statistics. Value: {@value #PROPS_STATS} */
+    public static final String PROPS_STATS = "stats";
+    /** the key in config properties object to set the number of platform threads for virtual thread callers. Value: {@value #PROPS_OFFLOAD_THREADS} */
+    public static final String PROPS_OFFLOAD_THREADS = "offloadThreads";
+    /** the key in config properties object to set the period of drift sampling. Value: {@value #PROPS_DRIFT_SAMPLE_MILLIS} */
+    public static final String PROPS_DRIFT_SAMPLE_MILLIS = "driftSampleMillis";
+    /** the key in config properties object to set critical FFM downcalls. Value: {@value #PROPS_FFM_CRITICAL} */
+    public static final String PROPS_FFM_CRITICAL = "ffmCritical";
+    /** the key in config properties object to set the lock strategy. Value: {@value #PROPS_LOCK_STRATEGY} */
+    public static final String PROPS_LOCK_STRATEGY = "lockStrategy";
+
+    /** JVM property to set log level. Value: {@value #JVM_JCHDIR_LOG_LEVEL} */
+    public static final String JVM_JCHDIR_LOG_LEVEL = "jchdir.logLevel";
+
+    /** JVM property to set lock fairness. Value: {@value #JVM_JCHDIR_FAIR_LOCK} */
+    public static final String JVM_JCHDIR_FAIR_LOCK = "jchdir.fairLock";
+
+    /** JVM property to set the size of the directory handle cache. Value: {@value #JVM_JCHDIR_FD_CACHE_SIZE} */
+    public static final String JVM_JCHDIR_FD_CACHE_SIZE = "jchdir.fdCacheSize";
+
+    /** JVM property to set the size of the validated path cache. Value: {@value #JVM_JCHDIR_PATH_CACHE_SIZE} */
+    public static final String JVM_JCHDIR_PATH_CACHE_SIZE = "jchdir.pathCacheSize";
+
+    /** JVM property to set the pinned native backend. Value: {@value #JVM_JCHDIR_BACKEND} */
+    public static final String JVM_JCHDIR_BACKEND = "jchdir.backend";
+
+    /** JVM property to set the directory of the preinstalled JNI library. Value: {@value #JVM_JCHDIR_JNI_LIB_DIR} */
+    public static final String JVM_JCHDIR_JNI_LIB_DIR = "jchdir.jniLibDir";
+
+    /** JVM property to set collecting statistics. Value: {@value #JVM_JCHDIR_STATS} */
+    public static final String JVM_JCHDIR_STATS = "jchdir.stats";
+
+    /** JVM property to set the number of platform threads for virtual thread callers. Value: {@value #JVM_JCHDIR_OFFLOAD_THREADS} */
+    public static final String JVM_JCHDIR_OFFLOAD_THREADS = "jchdir.offloadThreads";
+
+    /** JVM property to set the period of drift sampling. Value: {@value #JVM_JCHDIR_DRIFT_SAMPLE_MILLIS} */
+    public static final String JVM_JCHDIR_DRIFT_SAMPLE_MILLIS = "jchdir.driftSampleMillis";
+
+    /** JVM property to set critical FFM downcalls. Value: {@value #JVM_JCHDIR_FFM_CRITICAL} */
+    public static final String JVM_JCHDIR_FFM_CRITICAL = "jchdir.ffmCritical";
+
+    /** JVM property to set the lock strategy. Value: {@value #JVM_JCHDIR_LOCK_STRATEGY} */
+    public static final String JVM_JCHDIR_LOCK_STRATEGY = "jchdir.lockStrategy";
+
+    /**Environment variable name to set log level. Value: {@value #SYSTEM_JCHDIR_LOGLEVEL} */
+    public static final String SYSTEM_JCHDIR_LOGLEVEL = "JCHDIR_LOGLEVEL";
+    /** Environment variable name to set fairness. Value: {@value #SYSTEM_JCHDIR_FAIRLOCK}*/
+    public static final String SYSTEM_JCHDIR_FAIRLOCK = "JCHDIR_FAIRLOCK";
+    /** Environment variable name to set the size of the directory handle cache. Value: {@value #SYSTEM_JCHDIR_FDCACHESIZE}*/
+    public static final String SYSTEM_JCHDIR_FDCACHESIZE = "JCHDIR_FDCACHESIZE";
+    /** Environment variable name to set the size of the validated path cache. Value: {@value #SYSTEM_JCHDIR_PATHCACHESIZE}*/
+    public static final String SYSTEM_JCHDIR_PATHCACHESIZE = "JCHDIR_PATHCACHESIZE";
+    /** Environment variable name to set the pinned native backend. Value: {@value #SYSTEM_JCHDIR_BACKEND}*/
+    public static final String SYSTEM_JCHDIR_BACKEND = "JCHDIR_BACKEND";
+    /** Environment variable name to set the directory of the preinstalled JNI library. Value: {@value #SYSTEM_JCHDIR_JNILIBDIR}*/
+    public static final String SYSTEM_JCHDIR_JNILIBDIR = "JCHDIR_JNILIBDIR";
+    /** Environment variable name to set collecting statistics. Value: {@value #SYSTEM_JCHDIR_STATS}*/
+    public static final String SYSTEM_JCHDIR_STATS = "JCHDIR_STATS";
+    /** Environment variable name to set the number of platform threads for virtual thread callers. Value: {@value #SYSTEM_JCHDIR_OFFLOADTHREADS}*/
+    public static final String SYSTEM_JCHDIR_OFFLOADTHREADS = "JCHDIR_OFFLOADTHREADS";
+    /** Environment variable name to set the period of drift sampling. Value: {@value #SYSTEM_JCHDIR_DRIFTSAMPLEMILLIS}*/
+    public static final String SYSTEM_JCHDIR_DRIFTSAMPLEMILLIS = "JCHDIR_DRIFTSAMPLEMILLIS";
+    /** Environment variable name to set critical FFM downcalls. Value: {@value #SYSTEM_JCHDIR_FFMCRITICAL}*/
+    public static final String SYSTEM_JCHDIR_FFMCRITICAL = "JCHDIR_FFMCRITICAL";
+    /** Environment variable name to set the lock strategy. Value: {@value #SYSTEM_JCHDIR_LOCKSTRATEGY}*/
+    public static final String SYSTEM_JCHDIR_LOCKSTRATEGY = "JCHDIR_LOCKSTRATEGY";
+
+    private static ChdirConfig lazy_instance;
+
+    private static String initialisationStackTrace;
+
+    /**
+     * Gets the ChdirConfig instance. Initialises it, if needed.
+     * This method is thread-safe, always returns a value, and idempotent.
+     *
+     * @return the ChdirConfig instance.
+     */
+    public static ChdirConfig getInstance() {
+        return getInstanceWithConfig(null);
+    }
+
+    /**
+     * Trys to initialise a config with a custom setting. The config can only be initialised once / JVM.
+     * @param config this lambda gets the current properties (merged default, user, env, and jvm properties) and can modify it.
+     *               The modified object is then used to initialise a config. In case it is <code>null</code> behaves like getInstance.
+     * @return the ChdirConfig instance
+     * @throws IllegalStateException in case config is not null, and instance is already initialised
+     */
+    public static ChdirConfig getInstanceWithConfig(Consumer<Properties> config) {
+        synchronized (ChdirConfig.class) {
+            if (lazy_instance == null) {
+                saveInitialisationStackTrace();
+                Properties defaults = mergeAllProperties();
+                if(config != null) {
+                    config.accept(defaults);
+                }
+                lazy_instance = createFromProperties(defaults);
+                return lazy_instance;
+            } else if(config != null) {
+                throw new IllegalStateException("Instance was already configured with stack trace: \n"+initialisationStackTrace);
+            } else {
+                return lazy_instance;
+            }
+        }
+    }
+
+    private final Level logLevel;
+    private final boolean fairLock;
+    private final int fdCacheSize;
+    private final int pathCacheSize;
+    private final String backend;
+    private final String jniLibDir;
+    private final boolean stats;
+    private final int offloadThreads;
+    private final int driftSampleMillis;
+    private final boolean ffmCritical;
+    private final LockStrategy lockStrategy;
+
+    private ChdirConfig(final Level logLevel, final boolean fairLock, final int fdCacheSize, final int pathCacheSize, final String backend, final String jniLibDir, final boolean stats, final int offloadThreads, final int driftSampleMillis, final boolean ffmCritical, final LockStrategy lockStrategy) {
+        this.logLevel = logLevel;
+        this.fairLock = fairLock;
+        this.fdCacheSize = fdCacheSize;
+        this.pathCacheSize = pathCacheSize;
+        this.backend = backend;
+        this.jniLibDir = jniLibDir;
+        this.stats = stats;
+        this.offloadThreads = offloadThreads;
+        this.driftSampleMillis = driftSampleMillis;
+        this.ffmCritical = ffmCritical;
+        this.lockStrategy = lockStrategy;
+    }
+
+    /**
+     * Returns the log level we want ot see {@link ChangeDir} logs on.
+     * @return The requested log elvel. {@link Level#DEBUG} yb default.
+     */
+    public Level logLevel() {
+        return logLevel;
+    }
+
+    /**
+     * Determines to use a fair or unfair lock.
+     * @return <code>false</code> by default.
+     */
+    public boolean fairLock() {
+        return fairLock;
+    }
+
+    /**
+     * The number of open directory handles a handle caching native backend (like the FFM module's
+     * <code>FdCacheChangeDir</code>) may keep. <code>0</code> turns the cache off.
+     * @return <code>0</code> by default.
+     */
+    public int fdCacheSize() {
+        return fdCacheSize;
+    }
+
+    /**
+     * The number of validated directories {@link ChangeDir} remembers, so switching to them again skips the file system
+     * checks. Cached directories are watched, and forgotten if they are deleted or renamed. The watch reports a deletion
+     * late, so if the native backend does not report <code>errno</code>, a cached directory is still checked to exist
+     * (but it is not canonicalised again). <code>0</code> turns the cache off.
+     * @return <code>0</code> by default.
+     */
+    public int pathCacheSize() {
+        return pathCacheSize;
+    }
+
+    /**
+     * The native backend to use, without scanning all available ones. Either a short name: <code>ffm</code>,
+     * <code>fdcache</code>, <code>jna</code>, <code>jni</code>, <code>none</code>; or the fully qualified name of a
+     * {@link NativeChangeDir} implementation. Empty means: select the one with the highest preference.
+     * @return empty by default.
+     */
+    public String backend() {
+        return backend;
+    }
+
+    /**
+     * Directory, where the JNI backend's native library (<code>jchdir_jni.dll</code> or <code>libjchdir_jni.so</code>) is
+     * already installed. If set, the library is loaded from there, and not extracted from the class path.
+     * Empty means: extract it (once per library version) to <code>java.io.tmpdir</code>, into a directory only its user
+     * can access, where the system has POSIX permissions.
+     * @return empty by default.
+     */
+    public String jniLibDir() {
+        return jniLibDir;
+    }
+
+    /**
+     * If set, {@link ChangeDir} counts directory changes and measures their phases, and registers the numbers as a
+     * platform MBean (see {@link ChangeDirStatsMXBean}).
+     *
+     * @return true if statistics are collected
+     */
+    public boolean stats() {
+        return stats;
+    }
+
+    /**
+     * Number of platform threads, that do directory changes for virtual threads. If set, a virtual thread calling
+     * {@link ChangeDir} does not wait for the lock, the path checks and the native call on its carrier, it hands them over
+     * to this pool, and unmounts until they are done. 0 (the default) turns it off.
+     *
+     * @return the number of platform threads to offload to, 0 if disabled
+     */
+    public int offloadThreads() {
+        return offloadThreads;
+    }
+
+    /**
+     * Period of the drift sampler in milliseconds. If set, a daemon thread calls {@link ChangeDir#verify()} this often,
+     * and reports if the native working directory (or any JVM level one) differs from the one {@link ChangeDir} has set.
+     * 0 (the default) turns it off.
+     *
+     * @return the sampling period in milliseconds, 0 if disabled
+     */
+    public int driftSampleMillis() {
+        return driftSampleMillis;
+    }
+
+    /**
+     * If set, the FFM backend links <code>chdir</code> as a critical function (<code>Linker.Option.critical(true)</code>),
+     * and passes the path as a heap segment, without copying it to native memory. It lowers the cost of the call, but the
+     * GC can not run while it is in progress, so only use it if directory changes are always fast (local file systems).
+     *
+     * @return true if FFM uses critical downcalls
+     */
+    public boolean ffmCritical() {
+        return ffmCritical;
+    }
+
+    /**
+     * The way directory changes are serialised, see {@link LockStrategy}. The default is {@link LockStrategy#REENTRANT}.
+     *
+     * @return the lock strategy
+     */
+    public LockStrategy lockStrategy() {
+        return lockStrategy;
+    }
+
+    /**
+     * Saves the current setup as user settings to ~/.jchdir.rc
+     * @throws IOException in case it can not write the file
+     */
+    public void saveAsUserSettings() throws IOException {
+        Properties currentProperties = new Properties();
+        currentProperties.setProperty(PROPS_LOG_LEVEL, logLevel.toString());
+        currentProperties.setProperty(PROPS_FAIR_LOCK, Boolean.toString(fairLock));
+        currentProperties.setProperty(PROPS_FD_CACHE_SIZE, Integer.toString(fdCacheSize));
+        currentProperties.setProperty(PROPS_PATH_CACHE_SIZE, Integer.toString(pathCacheSize));
+        currentProperties.setProperty(PROPS_BACKEND, backend);
+        currentProperties.setProperty(PROPS_JNI_LIB_DIR, jniLibDir);
+        currentProperties.setProperty(PROPS_STATS, Boolean.toString(stats));
+        currentProperties.setProperty(PROPS_OFFLOAD_THREADS, Integer.toString(offloadThreads));
+        currentProperties.setProperty(PROPS_DRIFT_SAMPLE_MILLIS, Integer.toString(driftSampleMillis));
+        currentProperties.setProperty(PROPS_FFM_CRITICAL, Boolean.toString(ffmCritical));
+        currentProperties.setProperty(PROPS_LOCK_STRATEGY, lockStrategy.name());
+        synchronized (ChdirConfig.class) {
+            try (FileWriter fw = new FileWriter(CONFIG_FILE)) {
+                currentProperties.store(fw, "saved from stacktrace:\n"+createStackTraceString(2));
+            }
+        }
+    }
+
+    private static void saveInitialisationStackTrace() {
+        initialisationStackTrace = createStackTraceString(3);
+    }
+
+    private static String createStackTraceString(int skipElements) {
+        int counter = 1;
+        StringBuilder sb = new StringBuilder();
+        StackTraceElement[] stackTraceElements = Thread.currentThread().getStackTrace();
+        for(int i=skipElements; i<stackTraceElements.length; i++) {
+            sb.append("\t\t");
+            sb.append(counter);
+            sb.append(".\t");
+            sb.append(stackTraceElements[i]);
+            sb.append("\n");
+            ++counter;
+        }
+        return sb.toString();
+    }
+
+    private static Properties mergeAllProperties() {
+        Properties props = createDefaultProps();
+        loadUserConfgis(props);
+        loadEnvironmentSettings(props);
+        loadJvmProperties(props);
+        return props;
+    }
+
+    private static ChdirConfig createFromProperties(Properties props) {
+        Level logLevel = Level.valueOf(props.getProperty(PROPS_LOG_LEVEL));
+        boolean fairLock = Boolean.parseBoolean(props.getProperty(PROPS_FAIR_LOCK));
+        int fdCacheSize = Integer.parseInt(props.getProperty(PROPS_FD_CACHE_SIZE));
+        int pathCacheSize = Integer.parseInt(props.getProperty(PROPS_PATH_CACHE_SIZE));
+        String backend = props.getProperty(PROPS_BACKEND);
+        String jniLibDir = props.getProperty(PROPS_JNI_LIB_DIR);
+        boolean stats = Boolean.parseBoolean(props.getProperty(PROPS_STATS));
+        int offloadThreads = Integer.parseInt(props.getProperty(PROPS_OFFLOAD_THREADS));
+        int driftSampleMillis = Integer.parseInt(props.getProperty(PROPS_DRIFT_SAMPLE_MILLIS));
+        boolean ffmCritical = Boolean.parseBoolean(props.getProperty(PROPS_FFM_CRITICAL));
+        LockStrategy lockStrategy = LockStrategy.valueOf(props.getProperty(PROPS_LOCK_STRATEGY).trim().toUpperCase(Locale.ROOT));
+        return new ChdirConfig(logLevel, fairLock, fdCacheSize, pathCacheSize, backend, jniLibDir, stats, offloadThreads, driftSampleMillis, ffmCritical, lockStrategy);
+    }
+
+    /**
+     * Reads the strongest config: jvm properties.
+     * @param props the properties to update.
+     */
+    private static void loadJvmProperties(Properties props) {
+        loadJvmProperty(props, JVM_JCHDIR_LOG_LEVEL, PROPS_LOG_LEVEL);
+        loadJvmProperty(props, JVM_JCHDIR_FAIR_LOCK, PROPS_FAIR_LOCK);
+        loadJvmProperty(props, JVM_JCHDIR_FD_CACHE_SIZE, PROPS_FD_CACHE_SIZE);
+        loadJvmProperty(props, JVM_JCHDIR_PATH_CACHE_SIZE, PROPS_PATH_CACHE_SIZE);
+        loadJvmProperty(props, JVM_JCHDIR_BACKEND, PROPS_BACKEND);
+        loadJvmProperty(props, JVM_JCHDIR_JNI_LIB_DIR, PROPS_JNI_LIB_DIR);
+        loadJvmProperty(props, JVM_JCHDIR_STATS, PROPS_STATS);
+        loadJvmProperty(props, JVM_JCHDIR_OFFLOAD_THREADS, PROPS_OFFLOAD_THREADS);
+        loadJvmProperty(props, JVM_JCHDIR_DRIFT_SAMPLE_MILLIS, PROPS_DRIFT_SAMPLE_MILLIS);
+        loadJvmProperty(props, JVM_JCHDIR_FFM_CRITICAL, PROPS_FFM_CRITICAL);
+        loadJvmProperty(props, JVM_JCHDIR_LOCK_STRATEGY, PROPS_LOCK_STRATEGY);
+    }
+
+    private static void loadJvmProperty(Properties props, String jvmPorpKey, String storePropKey) {
+        if (System.getProperties().containsKey(jvmPorpKey)) {
+            props.setProperty(storePropKey, System.getProperty(jvmPorpKey));
+        }
+    }
+
+    /**
+     * Overrides the config with the settings from the environment variables.
+     * @param props the properties to update
+     */
+    private static void loadEnvironmentSettings(Properties props) {
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_LOGLEVEL, PROPS_LOG_LEVEL);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_FAIRLOCK, PROPS_FAIR_LOCK);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_FDCACHESIZE, PROPS_FD_CACHE_SIZE);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_PATHCACHESIZE, PROPS_PATH_CACHE_SIZE);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_BACKEND, PROPS_BACKEND);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_JNILIBDIR, PROPS_JNI_LIB_DIR);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_STATS, PROPS_STATS);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_OFFLOADTHREADS, PROPS_OFFLOAD_THREADS);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_DRIFTSAMPLEMILLIS, PROPS_DRIFT_SAMPLE_MILLIS);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_FFMCRITICAL, PROPS_FFM_CRITICAL);
+        loadEnvironmentSetting(props, SYSTEM_JCHDIR_LOCKSTRATEGY, PROPS_LOCK_STRATEGY);
+    }
+
+    private static void loadEnvironmentSetting(Properties props, String envKey, String propsKey) {
+        if(System.getenv().containsKey(envKey)) {
+            props.setProperty(propsKey, System.getenv(envKey));
+        }
+    }
+
+    /**
+     * Overrides default values with user's own configuration from ~/.jchdir.rc if exists.
+     *
+     * @param props The properties object to update with the loaded config
+     */
+    private static void loadUserConfgis(Properties props) {
+        if(CONFIG_FILE.exists()) {
+            try (FileReader reader = new FileReader(CONFIG_FILE, StandardCharsets.UTF_8)) {
+                props.load(reader);
+            } catch (IOException ioe) {
+                System.getLogger(ChdirConfig.class.getName()).log(Level.INFO, "Can not load config file: "+CONFIG_FILE.getAbsolutePath(), ioe);
+            }
+        }
+    }
+
+    /**
+     * Creates the default config values. This is the weakest config.
+     * @return a {@link Properties} object with all values set to the default values as Strign
+     */
+    private static Properties createDefaultProps() {
+        Properties props = new Properties();
+        props.setProperty(PROPS_LOG_LEVEL, "DEBUG");
+        props.setProperty(PROPS_FAIR_LOCK, "false");
+        props.setProperty(PROPS_FD_CACHE_SIZE, "0");
+        props.setProperty(PROPS_PATH_CACHE_SIZE, "0");
+        props.setProperty(PROPS_BACKEND, "");
+        props.setProperty(PROPS_JNI_LIB_DIR, "");
+        props.setProperty(PROPS_STATS, "false");
+        props.setProperty(PROPS_OFFLOAD_THREADS, "0");
+        props.setProperty(PROPS_DRIFT_SAMPLE_MILLIS, "0");
+        props.setProperty(PROPS_FFM_CRITICAL, "false");
+        props.setProperty(PROPS_LOCK_STRATEGY, "REENTRANT");
+        return props;
+    }
+}
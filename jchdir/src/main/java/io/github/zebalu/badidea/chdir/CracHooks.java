@@ -0,0 +1,88 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir;
+
+import java.lang.System.Logger.Level;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+
+/**
+ * Registers {@link ChangeDir} as a checkpoint/restore resource, if the CRaC API is available: either the
+ * <code>org.crac</code> library, or the <code>jdk.crac</code> module of a CRaC enabled JDK. Neither is a dependency,
+ * the resource is a proxy created reflectively. Before a checkpoint the cached native handles are closed, after a
+ * restore {@link ChangeDir#resync()} sets the working directory again.
+ */
+final class CracHooks {
+    private static final System.Logger LOG = System.getLogger(CracHooks.class.getName());
+    private static final String[] PACKAGES = {"org.crac", "jdk.crac"};
+
+    /** Contexts only keep weak references to their resources. */
+    private static volatile Object resource;
+
+    private CracHooks() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Registers the hooks with the global context of the first available CRaC API.
+     * @param changeDir the instance to re-sync
+     * @param logLevel the level to log the registration on
+     */
+    static void register(ChangeDir changeDir, Level logLevel) {
+        ClassLoader loader = CracHooks.class.getClassLoader();
+        for (String pkg : PACKAGES) {
+            Class<?> core;
+            try {
+                core = Class.forName(pkg + ".Core", true, loader);
+            } catch (ClassNotFoundException | LinkageError e) {
+                continue;
+            }
+            try {
+                Class<?> resourceType = Class.forName(pkg + ".Resource", true, core.getClassLoader());
+                Class<?> contextType = Class.forName(pkg + ".Context", true, core.getClassLoader());
+                Object context = core.getMethod("getGlobalContext").invoke(null);
+                Object proxy = Proxy.newProxyInstance(loader, new Class<?>[]{resourceType}, handler(changeDir, logLevel));
+                contextType.getMethod("register", resourceType).invoke(context, proxy);
+                resource = proxy;
+                LOG.log(logLevel, "Registered checkpoint/restore hooks with " + pkg);
+            } catch (ReflectiveOperationException | RuntimeException e) {
+                LOG.log(logLevel, "Can not register checkpoint/restore hooks with " + pkg, e);
+            }
+            return;
+        }
+    }
+
+    private static InvocationHandler handler(ChangeDir changeDir, Level logLevel) {
+        return (proxy, method, args) -> {
+            switch (method.getName()) {
+                case "beforeCheckpoint":
+                    changeDir.beforeCheckpoint();
+                    return null;
+                case "afterRestore":
+                    LOG.log(logLevel, "Restored, working directory: " + changeDir.resync());
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "jchdir checkpoint/restore hooks";
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        };
+    }
+}
@@ -0,0 +1,65 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * JFR event of the drift sampler (see {@link ChdirConfig#driftSampleMillis()}) finding a working directory, that does
+ * not match the one {@link ChangeDir} has set.
+ */
+@Name("io.github.zebalu.badidea.chdir.CwdDrift")
+@Label("Working Directory Drift")
+@Category("jchdir")
+@Description("A layer of the process does not see the working directory ChangeDir has set")
+@StackTrace(false)
+final class CwdDriftEvent extends jdk.jfr.Event {
+
+    @Label("Expected")
+    String expected;
+
+    @Label("user.dir")
+    String userDirProperty;
+
+    @Label("File")
+    String fileUserDir;
+
+    @Label("NIO")
+    String nioDefaultDir;
+
+    @Label("Native")
+    String nativeDir;
+
+    /**
+     * Commits the event of a drift, if it is recorded.
+     */
+    static void record(CwdVerification verification) {
+        CwdDriftEvent event = new CwdDriftEvent();
+        if (event.shouldCommit()) {
+            event.expected = verification.expected();
+            event.userDirProperty = verification.userDirProperty();
+            event.fileUserDir = verification.fileUserDir();
+            event.nioDefaultDir = verification.nioDefaultDir();
+            event.nativeDir = verification.nativeDir();
+            event.commit();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * Gets notified, when the working directory changes, see {@link ChangeDir#addListener(CwdListener)}.
+ */
+@FunctionalInterface
+public interface CwdListener {
+
+    /**
+     * Called on the listener thread of {@link ChangeDir}, never while a change is in progress. Changes coming in a
+     * burst are coalesced: only the latest directory is passed, and the same directory is not passed twice in a row.
+     *
+     * @param dir the absolute working directory
+     */
+    void cwdChanged(String dir);
+}
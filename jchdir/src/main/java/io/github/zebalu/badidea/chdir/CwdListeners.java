@@ -0,0 +1,95 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir;
+
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+
+import java.lang.System.Logger.Level;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * The listeners of {@link ChangeDir}. Each one has a single pending slot: a change overwrites it, and a delivery is only
+ * scheduled, if the slot was empty. So however many changes come while a listener is busy, it gets called once, with
+ * the latest directory. Listeners are called one after the other, on a single daemon thread, that is only started
+ * with the first listener.
+ */
+final class CwdListeners {
+    private static final System.Logger LOG = System.getLogger(CwdListeners.class.getName());
+
+    private final Level logLevel;
+    private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+    private final LazyInit<ExecutorService> executor = new LazyInit<>(() -> Executors.newSingleThreadExecutor(task -> {
+        Thread thread = new Thread(task, "jchdir-cwd-listeners");
+        thread.setDaemon(true);
+        return thread;
+    }));
+
+    CwdListeners(Level logLevel) {
+        this.logLevel = logLevel;
+    }
+
+    void add(CwdListener listener, String currentDir) {
+        subscriptions.add(new Subscription(listener, currentDir));
+    }
+
+    boolean remove(CwdListener listener) {
+        return subscriptions.removeIf(subscription -> subscription.listener == listener);
+    }
+
+    /**
+     * Schedules the notification of every listener, that is not already waiting for one.
+     * @param dir the directory after the change
+     */
+    void publish(String dir) {
+        if (subscriptions.isEmpty()) {
+            return;
+        }
+        for (Subscription subscription : subscriptions) {
+            if (subscription.pending.getAndSet(dir) == null) {
+                executor.get().execute(subscription::deliver);
+            }
+        }
+    }
+
+    private final class Subscription {
+        private final CwdListener listener;
+        private final AtomicReference<String> pending = new AtomicReference<>();
+        /** Only used on the listener thread. */
+        private String delivered;
+
+        private Subscription(CwdListener listener, String currentDir) {
+            this.listener = listener;
+            this.delivered = currentDir;
+        }
+
+        private void deliver() {
+            String dir = pending.getAndSet(null);
+            if (dir == null || dir.equals(delivered)) {
+                return;
+            }
+            delivered = dir;
+            try {
+                listener.cwdChanged(dir);
+            } catch (RuntimeException e) {
+                LOG.log(logLevel, "Working directory listener has failed: " + listener, e);
+            }
+        }
+    }
+}
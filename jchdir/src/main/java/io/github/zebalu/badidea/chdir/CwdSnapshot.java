@@ -0,0 +1,59 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+/**
+ * Immutable view of a working directory. All forms are created once, when the directory is set, so readers can use them
+ * without any locking or allocation, and setting the same directory again does not need to encode it again.
+ */
+final class CwdSnapshot {
+    private final String dir;
+    private final File file;
+    private final Path path;
+    private final Object nioValue;
+
+    CwdSnapshot(String dir) {
+        this.dir = dir;
+        this.file = new File(dir);
+        this.path = Path.of(dir);
+        this.nioValue = FileSystemFields.nioValue(dir);
+    }
+
+    String dir() {
+        return dir;
+    }
+
+    File file() {
+        return file;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    /**
+     * The directory in the form the NIO default directory is stored in: the String itself, or its UTF-8 bytes.
+     * The bytes are shared, they must not be modified.
+     * @return the NIO form of the directory
+     */
+    Object nioValue() {
+        return nioValue;
+    }
+}
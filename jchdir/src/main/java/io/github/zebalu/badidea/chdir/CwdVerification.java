@@ -0,0 +1,123 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.util.Objects;
+
+/**
+ * The working directory as seen by each layer at one moment, see {@link ChangeDir#verify()}. Normally they are all the
+ * same, a difference means something has changed directory without {@link ChangeDir}: native code calling
+ * <code>chdir</code>, or a code setting <code>user.dir</code>.
+ */
+public final class CwdVerification {
+    private final String expected;
+    private final String userDirProperty;
+    private final String fileUserDir;
+    private final String nioDefaultDir;
+    private final String nativeDir;
+
+    CwdVerification(String expected, String userDirProperty, String fileUserDir, String nioDefaultDir, String nativeDir) {
+        this.expected = expected;
+        this.userDirProperty = userDirProperty;
+        this.fileUserDir = fileUserDir;
+        this.nioDefaultDir = nioDefaultDir;
+        this.nativeDir = nativeDir;
+    }
+
+    /**
+     * The working directory {@link ChangeDir} has set last.
+     * @return the expected working directory
+     */
+    public String expected() {
+        return expected;
+    }
+
+    /**
+     * The <code>user.dir</code> system property.
+     * @return value of <code>user.dir</code>
+     */
+    public String userDirProperty() {
+        return userDirProperty;
+    }
+
+    /**
+     * The directory {@link java.io.File} resolves relative paths against.
+     * @return value of <code>File.FS.userDir</code>
+     */
+    public String fileUserDir() {
+        return fileUserDir;
+    }
+
+    /**
+     * The directory {@link java.nio.file.Path} resolves relative paths against.
+     * @return the default directory of the default file system
+     */
+    public String nioDefaultDir() {
+        return nioDefaultDir;
+    }
+
+    /**
+     * The directory of the operating system (<code>getcwd</code>).
+     * @return the native working directory, or <code>null</code> if the backend can not read it
+     */
+    public String nativeDir() {
+        return nativeDir;
+    }
+
+    /**
+     * Tells if the native directory differs from the expected one. It is always <code>false</code> if the native
+     * directory is not known.
+     * @return <code>true</code> if native code has changed directory
+     */
+    public boolean isNativeDrift() {
+        return nativeDir != null && !nativeDir.equals(expected);
+    }
+
+    /**
+     * Tells if every layer agrees on the working directory.
+     * @return <code>true</code> if there is no drift
+     */
+    public boolean isConsistent() {
+        return expected.equals(userDirProperty) && expected.equals(fileUserDir) && expected.equals(nioDefaultDir)
+                && !isNativeDrift();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof CwdVerification)) {
+            return false;
+        }
+        CwdVerification other = (CwdVerification) o;
+        return expected.equals(other.expected) && Objects.equals(userDirProperty, other.userDirProperty)
+                && Objects.equals(fileUserDir, other.fileUserDir) && Objects.equals(nioDefaultDir, other.nioDefaultDir)
+                && Objects.equals(nativeDir, other.nativeDir);
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(expected, userDirProperty, fileUserDir, nioDefaultDir, nativeDir);
+    }
+
+    @Override
+    public String toString() {
+        return "CwdVerification[expected=" + expected + ", user.dir=" + userDirProperty + ", File=" + fileUserDir
+                + ", NIO=" + nioDefaultDir + ", native=" + nativeDir + "]";
+    }
+}
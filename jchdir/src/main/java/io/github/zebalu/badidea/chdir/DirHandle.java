@@ -0,0 +1,75 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.io.File;
+import java.nio.file.Path;
+
+/**
+ * A directory prepared for repeated switches by {@link ChangeDir#prepare(String)}. It holds everything a switch
+ * needs: the validated canonical path, its {@link File} and {@link Path} forms, its encoded form for the NIO file
+ * system, and the native form the backend works with (see {@link NativeChangeDir#prepare(String)}). Switching to it
+ * with {@link ChangeDir#changeDir(DirHandle)} does not validate, encode or allocate again.
+ * <p>
+ * It is immutable and can be shared between threads. The directory is checked only once, when it is prepared.
+ */
+public final class DirHandle {
+    private final CwdSnapshot snapshot;
+    private final Object nativeForm;
+
+    DirHandle(CwdSnapshot snapshot, Object nativeForm) {
+        this.snapshot = snapshot;
+        this.nativeForm = nativeForm;
+    }
+
+    CwdSnapshot snapshot() {
+        return snapshot;
+    }
+
+    Object nativeForm() {
+        return nativeForm;
+    }
+
+    /**
+     * The canonical, absolute path of the directory.
+     * @return the directory
+     */
+    public String dir() {
+        return snapshot.dir();
+    }
+
+    /**
+     * The directory as a {@link File}, the same instance every time.
+     * @return the directory
+     */
+    public File file() {
+        return snapshot.file();
+    }
+
+    /**
+     * The directory as a {@link Path}, the same instance every time.
+     * @return the directory
+     */
+    public Path path() {
+        return snapshot.path();
+    }
+
+    @Override
+    public String toString() {
+        return "DirHandle[" + snapshot.dir() + "]";
+    }
+}
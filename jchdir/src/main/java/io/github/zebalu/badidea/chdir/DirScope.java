@@ -0,0 +1,69 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * A directory entered with {@link ChangeDir#push(String)}. Closing it changes back to the directory that was current
+ * before the push. Use it in a try-with-resources block:
+ * <pre>{@code
+ * try (DirScope scope = ChangeDir.getInstance().push("/some/workspace")) {
+ *     // work in /some/workspace
+ * }
+ * }</pre>
+ * Scopes of a thread form a stack, so they have to be closed in reverse order of their creation, on the thread that
+ * created them.
+ */
+public final class DirScope implements AutoCloseable {
+
+    private final ChangeDir owner;
+    private final CwdSnapshot previous;
+    private final Thread thread;
+    private boolean closed;
+
+    DirScope(ChangeDir owner, CwdSnapshot previous) {
+        this.owner = owner;
+        this.previous = previous;
+        this.thread = Thread.currentThread();
+    }
+
+    /**
+     * Returns the directory, that is restored on {@link #close()}.
+     * @return absolute path of the previous working directory
+     */
+    public String previousDir() {
+        return previous.dir();
+    }
+
+    /**
+     * Changes back to the previous working directory. The previous directory is not validated again, the state that
+     * was already checked before the push is reused. Calling it more than once has no effect.
+     * @throws IllegalStateException if called from another thread, if a scope pushed later is still open, or if the
+     * native change back has failed
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (thread != Thread.currentThread()) {
+            throw new IllegalStateException("Directory scope can only be closed by the thread that has created it");
+        }
+        owner.pop(this);
+        closed = true;
+        owner.restore(previous);
+    }
+}
@@ -0,0 +1,81 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.lang.System.Logger.Level;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls {@link ChangeDir#verify()} periodically on a daemon thread, and reports drift as a log message and a
+ * {@link CwdDriftEvent} (if JFR is available). The same drift is only logged once, a new message is written when it changes or is gone.
+ * The native buffer of the backend is reused between samples, as the same thread does all the calls.
+ */
+final class DriftSampler {
+    private static final System.Logger LOG = System.getLogger(DriftSampler.class.getName());
+
+    private final ChangeDir changeDir;
+    private final Level logLevel;
+    private CwdVerification lastDrift;
+
+    private DriftSampler(ChangeDir changeDir, Level logLevel) {
+        this.changeDir = changeDir;
+        this.logLevel = logLevel;
+    }
+
+    /**
+     * Starts sampling, if enabled.
+     * @param changeDir the instance to verify
+     * @param periodMillis {@link ChdirConfig#driftSampleMillis()}
+     * @param logLevel the level to report drift on
+     */
+    static void start(ChangeDir changeDir, int periodMillis, Level logLevel) {
+        if (periodMillis <= 0) {
+            return;
+        }
+        DriftSampler sampler = new DriftSampler(changeDir, logLevel);
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "jchdir-drift-sampler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.scheduleWithFixedDelay(sampler::sample, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample() {
+        try {
+            CwdVerification verification = changeDir.verify();
+            if (verification.isConsistent()) {
+                if (lastDrift != null) {
+                    LOG.log(logLevel, "Working directory is consistent again: " + verification.expected());
+                    lastDrift = null;
+                }
+                return;
+            }
+            if (!verification.equals(lastDrift)) {
+                LOG.log(logLevel, "Working directory drift: " + verification);
+                lastDrift = verification;
+            }
+            if (OptionalModules.JFR) {
+                CwdDriftEvent.record(verification);
+            }
+        } catch (RuntimeException e) {
+            LOG.log(logLevel, "Can not verify working directory", e);
+        }
+    }
+}
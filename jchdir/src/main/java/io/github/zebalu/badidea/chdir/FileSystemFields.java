@@ -0,0 +1,203 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import io.github.zebalu.badidea.chdir.util.OsUtil;
+
+import java.io.File;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.InaccessibleObjectException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/**
+ * Resolves the JDK internal fields, that hold the working directory (<code>File.FS.userDir</code> and the default
+ * directory of the default <code>sun.nio.fs</code> file system) once, into <code>static final</code> method handles,
+ * already bound to their owner objects. That way the JIT can treat them as constants, and a write costs no reflective
+ * access check.
+ * <p>
+ * The writes are plain, they become visible to other threads through the volatile publication of the new
+ * {@link CwdSnapshot}, that follows them.
+ */
+final class FileSystemFields {
+
+    private static final MethodType SET_STRING = MethodType.methodType(void.class, String.class);
+    private static final MethodType SET_BYTES = MethodType.methodType(void.class, byte[].class);
+    private static final MethodType GET_OBJECT = MethodType.methodType(Object.class);
+
+    /** <code>true</code> if the NIO default directory is stored as UTF-8 bytes, not as a String. */
+    static final boolean AS_BYTE_ARRAY;
+    private static final MethodHandle FILE_USER_DIR_SETTER;
+    private static final MethodHandle NIO_DEFAULT_DIR_SETTER;
+    private static final MethodHandle FILE_USER_DIR_GETTER;
+    private static final MethodHandle NIO_DEFAULT_DIR_GETTER;
+    private static final Throwable INIT_FAILURE;
+
+    static {
+        boolean asByteArray = false;
+        MethodHandle fileSetter = null;
+        MethodHandle nioSetter = null;
+        MethodHandle fileGetter = null;
+        MethodHandle nioGetter = null;
+        Throwable failure = null;
+        try {
+            Field fileFs = File.class.getDeclaredField("FS");
+            fileFs.setAccessible(true);
+            Object fileObject = fileFs.get(null);
+            Field fileField = fileObject.getClass().getDeclaredField("userDir");
+            fileField.setAccessible(true);
+
+            // with ScopedCwdFileSystemProvider installed, the fields are in the file system it wraps
+            Path currentUserDir = ScopedCwdFileSystemProvider.unwrap(Paths.get(System.getProperty("user.dir")));
+            Field pathFs = currentUserDir.getClass().getDeclaredField("fs");
+            pathFs.setAccessible(true);
+            Object pathObject = pathFs.get(currentUserDir);
+            Field pathField;
+
+            if(OsUtil.isWindows()) {
+                pathField = pathObject.getClass().getDeclaredField("defaultDirectory");
+                pathField.setAccessible(true);
+            } else {
+                pathField = findField(pathObject.getClass(), "userDir", 1);
+                if(pathField == null) {
+                    pathField = findField(pathObject.getClass().getSuperclass(), "defaultDirectory", 2);
+                    asByteArray = true;
+                }
+                if(pathField == null) {
+                    throw new IllegalStateException("Not supported OS / File System.");
+                }
+            }
+            fileSetter = setter(fileField, fileObject).asType(SET_STRING);
+            nioSetter = setter(pathField, pathObject).asType(asByteArray ? SET_BYTES : SET_STRING);
+            fileGetter = getter(fileField, fileObject);
+            nioGetter = getter(pathField, pathObject);
+        } catch (NoSuchFieldException | IllegalArgumentException | IllegalAccessException |
+                 InaccessibleObjectException | IllegalStateException | NoSuchMethodException e) {
+            failure = e;
+        }
+        AS_BYTE_ARRAY = asByteArray;
+        FILE_USER_DIR_SETTER = fileSetter;
+        NIO_DEFAULT_DIR_SETTER = nioSetter;
+        FILE_USER_DIR_GETTER = fileGetter;
+        NIO_DEFAULT_DIR_GETTER = nioGetter;
+        INIT_FAILURE = failure;
+    }
+
+    private FileSystemFields() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Tells why the fields could not be resolved.
+     * @return the reason, or <code>null</code> if all fields are available
+     */
+    static Throwable initFailure() {
+        return INIT_FAILURE;
+    }
+
+    /**
+     * Converts a directory to the form the NIO default directory is stored in.
+     * @param dir the absolute directory
+     * @return the directory itself, or its UTF-8 bytes
+     */
+    static Object nioValue(String dir) {
+        return AS_BYTE_ARRAY ? dir.getBytes(StandardCharsets.UTF_8) : dir;
+    }
+
+    /**
+     * Writes the directory of the snapshot into the JDK internal fields.
+     * @param snapshot the new working directory
+     */
+    static void write(CwdSnapshot snapshot) {
+        try {
+            FILE_USER_DIR_SETTER.invokeExact(snapshot.dir());
+            if (AS_BYTE_ARRAY) {
+                NIO_DEFAULT_DIR_SETTER.invokeExact((byte[]) snapshot.nioValue());
+            } else {
+                NIO_DEFAULT_DIR_SETTER.invokeExact((String) snapshot.nioValue());
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Can not set working directory fields", t);
+        }
+    }
+
+    /**
+     * Reads <code>File.FS.userDir</code>.
+     * @return the working directory {@link File} resolves against
+     */
+    static String readFileUserDir() {
+        try {
+            Object value = FILE_USER_DIR_GETTER.invokeExact();
+            return (String) value;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Can not read working directory fields", t);
+        }
+    }
+
+    /**
+     * Reads the default directory of the default NIO file system.
+     * @return the working directory {@link Path} resolves against
+     */
+    static String readNioDefaultDir() {
+        try {
+            Object value = NIO_DEFAULT_DIR_GETTER.invokeExact();
+            return AS_BYTE_ARRAY ? new String((byte[]) value, StandardCharsets.UTF_8) : (String) value;
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new IllegalStateException("Can not read working directory fields", t);
+        }
+    }
+
+    private static MethodHandle getter(Field field, Object owner) throws IllegalAccessException {
+        return MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup()).unreflectGetter(field)
+                .bindTo(owner).asType(GET_OBJECT);
+    }
+
+    private static MethodHandle setter(Field field, Object owner) throws IllegalAccessException, NoSuchMethodException {
+        MethodHandle setter;
+        try {
+            setter = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup()).unreflectSetter(field);
+        } catch (IllegalAccessException finalField) {
+            // final fields can only be written through the accessible Field itself on some JVMs
+            setter = MethodHandles.lookup().findVirtual(Field.class, "set", MethodType.methodType(void.class, Object.class, Object.class))
+                    .bindTo(field);
+        }
+        return setter.bindTo(owner);
+    }
+
+    private static Field findField(Class<?> clazz, String name, int depthRemaining) {
+        if(clazz == null || depthRemaining <= 0) {
+            return null;
+        }
+        for(Field field : clazz.getDeclaredFields()) {
+            if(field.getName().equals(name)) {
+                field.setAccessible(true);
+                return field;
+            }
+        }
+        return findField(clazz.getSuperclass(), name, depthRemaining - 1);
+    }
+}
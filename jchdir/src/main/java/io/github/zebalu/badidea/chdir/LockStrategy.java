@@ -0,0 +1,36 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * How {@link ChangeDir} serialises directory changes, see {@link ChdirConfig#lockStrategy()}. Reading the current
+ * directory ({@link ChangeDir#getCWD()} and the like) never takes a lock, {@link ChangeDir#verify()} takes the read side,
+ * where there is one.
+ */
+public enum LockStrategy {
+    /** A {@link java.util.concurrent.locks.ReentrantLock}, fair if {@link ChdirConfig#fairLock()} is set. */
+    REENTRANT,
+    /** The write and read views of a {@link java.util.concurrent.locks.StampedLock}. It is never fair. */
+    STAMPED,
+    /** A {@link java.util.concurrent.locks.ReentrantReadWriteLock}, fair if {@link ChdirConfig#fairLock()} is set. */
+    READ_WRITE,
+    /**
+     * Every change is handed over to one dedicated platform thread, callers wait for it. The lock is only ever taken
+     * by that thread (and {@link ChangeDir#verify()}), so it is never contended by writers.
+     */
+    SINGLE_WRITER
+}
@@ -0,0 +1,56 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of {@link NativeChangeDirLoader} selecting the native backend. Its duration is the time of the selection,
+ * including the service lookup and the creation of the backend.
+ */
+@Name("io.github.zebalu.badidea.chdir.NativeBackendSelected")
+@Label("Native Backend Selected")
+@Category("jchdir")
+@Description("The native change directory implementation has been selected")
+final class NativeBackendSelectedEvent extends jdk.jfr.Event {
+
+    @Label("Backend")
+    String backend;
+
+    @Label("Preference")
+    int preference;
+
+    @Label("Configured Backend")
+    @Description("The value of the backend setting, empty if the highest preference is selected")
+    String configured;
+
+    /**
+     * Ends the event, and commits it, if it is recorded.
+     */
+    void record(NativeChangeDir selected, String configured) {
+        end();
+        if (shouldCommit()) {
+            backend = selected.getClass().getName();
+            preference = selected.preference();
+            this.configured = configured;
+            commit();
+        }
+    }
+}
@@ -1,45 +1,138 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir;
-
-/**
- * Interface abstraction to select the best suited native change dir implementation.
- */
-public interface NativeChangeDir {
-    /**
-     * Calls out to a native solution to change the current working directory of JVM.
-     *
-     * @param dir the new working directory (must be absolute path, to existing directory)
-     * @return <code>true</code> in case the directoy change was succesful.
-     */
-    boolean changeDir(String dir);
-
-    /**
-     * The preference helps find the best available implementation of available services. The higher the number, the better the more likely to be selected.
-     * Built in implementations:
-     * <ol>
-     *     <li>0 --  No implementation</li>
-     *     <li>1 -- JNI based implementation</li>
-     *     <li>4 -- JNA based implementation</li>
-     *     <li>22 -- FFM based implementation</li>
-     * </ol>
-     * If you add your implementation, aim above those that are on the classpath.
-     *
-     * @return preference code
-     */
-    int preference();
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * Interface abstraction to select the best suited native change dir implementation.
+ */
+public interface NativeChangeDir {
+    /**
+     * Calls out to a native solution to change the current working directory of JVM.
+     *
+     * @param dir the new working directory (must be absolute path, to existing directory)
+     * @return <code>true</code> in case the directoy change was succesful.
+     */
+    boolean changeDir(String dir);
+
+    /**
+     * Calls out to a native solution to change the current working directory of JVM, and tells why it has failed.
+     * By default it calls {@link #changeDir(String)}, and can not tell the reason of a failure.
+     *
+     * @param dir the new working directory (must be absolute path)
+     * @return the result of the change, with <code>errno</code> in case of failure
+     * @see #reportsErrno()
+     */
+    default NativeResult changeDirWithResult(String dir) {
+        return changeDir(dir) ? NativeResult.success() : NativeResult.unknownFailure();
+    }
+
+    /**
+     * Builds the form of a directory, that this backend can switch to the fastest, e.g. a ready C string. The result
+     * is kept in a {@link DirHandle}, and passed to {@link #changeDirPrepared(String, Object)} on every switch.
+     * By default there is nothing to prepare.
+     *
+     * @param dir the new working directory (must be absolute path, to existing directory)
+     * @return the prepared form of the directory, or <code>null</code> if there is nothing to prepare
+     */
+    default Object prepare(String dir) {
+        return null;
+    }
+
+    /**
+     * Changes directory with the form built by {@link #prepare(String)} of the same instance.
+     * By default it calls {@link #changeDirWithResult(String)}.
+     *
+     * @param dir the new working directory (must be absolute path)
+     * @param prepared the result of {@link #prepare(String)} for this directory, can be <code>null</code>
+     * @return the result of the change, with <code>errno</code> in case of failure (if supported)
+     */
+    default NativeResult changeDirPrepared(String dir, Object prepared) {
+        return changeDirWithResult(dir);
+    }
+
+    /**
+     * Tells if {@link #changeDirWithResult(String)} is a real native call, that reports the reason of its failures.
+     * If so, {@link ChangeDir} does not check the directory in Java, but lets the native call decide.
+     * By default it is <code>false</code>.
+     *
+     * @return <code>true</code> if failures come with their <code>errno</code>
+     */
+    default boolean reportsErrno() {
+        return false;
+    }
+
+    /**
+     * Reads the native working directory (<code>getcwd</code>) of the process, or of the calling thread, if it is
+     * isolated (see {@link #isolateThread()}). It is used to detect native code changing directory behind
+     * {@link ChangeDir}'s back.
+     * By default it is not supported.
+     *
+     * @return the absolute native working directory, or <code>null</code> if it can not be read
+     */
+    default String getCwd() {
+        return null;
+    }
+
+    /**
+     * Gives the calling thread its own native working directory, detached from the rest of the process. After a
+     * successful call {@link #changeDir(String)} on this thread only changes the directory of this thread, and changes
+     * done by other threads are not visible to it. There is no way back: the thread keeps its own directory until it ends.
+     * On Linux it is done by <code>unshare(CLONE_FS)</code>. It is only meaningful for platform threads.
+     * By default it is not supported.
+     *
+     * @return <code>true</code> in case the calling thread has its own working directory.
+     */
+    default boolean isolateThread() {
+        return false;
+    }
+
+    /**
+     * Tells if {@link #isolateThread()} is supported at all, without isolating the calling thread. If it is, isolation
+     * can still fail for a given thread (e.g. if the system call is denied).
+     * By default it is not supported.
+     *
+     * @return <code>true</code> in case threads can be isolated
+     */
+    default boolean supportsThreadIsolation() {
+        return false;
+    }
+
+    /**
+     * Forgets every native resource cached for earlier calls (e.g. open directory handles), because the directories
+     * behind them may be gone or replaced, like after a restore from a checkpoint. Later calls work as on a fresh
+     * instance.
+     * By default there is nothing to forget.
+     */
+    default void reset() {
+    }
+
+    /**
+     * The preference helps find the best available implementation of available services. The higher the number, the better the more likely to be selected.
+     * Built in implementations:
+     * <ol>
+     *     <li>0 --  No implementation</li>
+     *     <li>1 -- JNI based implementation</li>
+     *     <li>4 -- JNA based implementation</li>
+     *     <li>22 -- FFM based implementation</li>
+     * </ol>
+     * If you add your implementation, aim above those that are on the classpath.
+     * Also declare the same value with {@link NativePreference} on your class, so it is only created, if it is selected.
+     *
+     * @return preference code
+     */
+    int preference();
+}
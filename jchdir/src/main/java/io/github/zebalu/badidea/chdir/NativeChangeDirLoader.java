@@ -1,61 +1,127 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir;
-
-import io.github.zebalu.badidea.chdir.util.LazyInit;
-
-import java.util.Comparator;
-import java.util.ServiceLoader;
-
-class NativeChangeDirLoader {
-
-    private static final LazyInit<ServiceLoader<NativeChangeDir>> LOADER = new LazyInit<>(()->ServiceLoader.load(NativeChangeDir.class));
-    private static final LazyInit<NativeChangeDir> INSTANCE = new LazyInit<>(NativeChangeDirLoader::loadGreatestPreference);
-    private static final Comparator<? super ServiceLoader.Provider<NativeChangeDir>> PREFERENCE_COMPARATOR = Comparator.comparingInt(p->p.get().preference());
-
-
-    static NativeChangeDir getInstance() {
-        return INSTANCE.get();
-    }
-
-    private static NativeChangeDir loadGreatestPreference() {
-        return LOADER.get().stream().max(PREFERENCE_COMPARATOR).orElse(new ServiceLoader.Provider<>() {
-            @Override
-            public Class<? extends NativeChangeDir> type() {
-                return NoNativeChangeDir.class;
-            }
-
-            @Override
-            public NativeChangeDir get() {
-                return new NoNativeChangeDir();
-            }
-        }).get();
-    }
-
-    private static class NoNativeChangeDir implements NativeChangeDir {
-
-        @Override
-        public boolean changeDir(String dir) {
-            return false;
-        }
-
-        @Override
-        public int preference() {
-            return 0;
-        }
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import io.github.zebalu.badidea.chdir.util.LazyInit;
+
+import java.lang.reflect.InvocationTargetException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+
+class NativeChangeDirLoader {
+
+    private static final System.Logger LOG = System.getLogger(NativeChangeDirLoader.class.getName());
+    private static final LazyInit<ServiceLoader<NativeChangeDir>> LOADER = new LazyInit<>(()->ServiceLoader.load(NativeChangeDir.class));
+    private static final LazyInit<NativeChangeDir> INSTANCE = new LazyInit<>(NativeChangeDirLoader::load);
+    private static final Map<String, String> ALIASES = Map.of(
+            "ffm", "io.github.zebalu.badidea.chdir.native_impl.ffm.FfmChangeDir",
+            "fdcache", "io.github.zebalu.badidea.chdir.native_impl.ffm.FdCacheChangeDir",
+            "jna", "io.github.zebalu.badidea.chdir.native_impl.jna.JnaNativeChDir",
+            "jni", "io.github.zebalu.badidea.chdir.native_impl.jni.JniNativeChangeDir");
+
+    static NativeChangeDir getInstance() {
+        return INSTANCE.get();
+    }
+
+    private static NativeChangeDir load() {
+        ChdirConfig config = ChdirConfig.getInstance();
+        String backend = config.backend().trim();
+        NativeBackendSelectedEvent event = null;
+        if (OptionalModules.JFR) {
+            event = new NativeBackendSelectedEvent();
+            event.begin();
+        }
+        NativeChangeDir selected = backend.isEmpty() ? loadGreatestPreference() : loadPinned(backend);
+        if (event != null) {
+            event.record(selected, backend);
+        }
+        LOG.log(config.logLevel(), "Selected native backend: " + selected.getClass().getName());
+        return selected;
+    }
+
+    static NativeChangeDir loadPinned(String backend) {
+        if ("none".equals(backend)) {
+            return new NoNativeChangeDir();
+        }
+        String className = ALIASES.getOrDefault(backend, backend);
+        return instantiate(className).or(() -> LOADER.get().stream()
+                        .filter(p -> p.type().getName().equals(className))
+                        .findFirst()
+                        .map(ServiceLoader.Provider::get))
+                .orElseThrow(() -> new IllegalStateException("Pinned native backend is not available: " + backend));
+    }
+
+    /**
+     * Creates the class directly, without the service loader. It only works, if the class is accessible (e.g. on the
+     * class path), a module, that does not export its implementation is only reachable through the service loader.
+     */
+    private static Optional<NativeChangeDir> instantiate(String className) {
+        try {
+            Class<?> type = Class.forName(className, false, NativeChangeDirLoader.class.getClassLoader());
+            if (!NativeChangeDir.class.isAssignableFrom(type)) {
+                throw new IllegalStateException("Pinned native backend does not implement NativeChangeDir: " + className);
+            }
+            return Optional.of((NativeChangeDir) type.getConstructor().newInstance());
+        } catch (ClassNotFoundException | NoSuchMethodException | IllegalAccessException | InstantiationException e) {
+            return Optional.empty();
+        } catch (InvocationTargetException e) {
+            throw new IllegalStateException("Can not create native backend: " + className, e.getCause());
+        }
+    }
+
+    /**
+     * Compares the providers by their {@link NativePreference} annotation, so only the selected one is created.
+     * Providers without the annotation are created (once) to ask their preference.
+     */
+    static NativeChangeDir loadGreatestPreference() {
+        ServiceLoader.Provider<NativeChangeDir> best = null;
+        NativeChangeDir bestInstance = null;
+        int bestPreference = Integer.MIN_VALUE;
+        Iterator<ServiceLoader.Provider<NativeChangeDir>> providers = LOADER.get().stream().iterator();
+        while (providers.hasNext()) {
+            ServiceLoader.Provider<NativeChangeDir> provider = providers.next();
+            NativePreference declared = provider.type().getAnnotation(NativePreference.class);
+            NativeChangeDir instance = declared == null ? provider.get() : null;
+            int preference = declared == null ? instance.preference() : declared.value();
+            if (best == null || preference > bestPreference) {
+                best = provider;
+                bestInstance = instance;
+                bestPreference = preference;
+            }
+        }
+        if (best == null) {
+            return new NoNativeChangeDir();
+        }
+        return bestInstance != null ? bestInstance : best.get();
+    }
+
+    @NativePreference(0)
+    private static class NoNativeChangeDir implements NativeChangeDir {
+
+        @Override
+        public boolean changeDir(String dir) {
+            return false;
+        }
+
+        @Override
+        public int preference() {
+            return 0;
+        }
+    }
+}
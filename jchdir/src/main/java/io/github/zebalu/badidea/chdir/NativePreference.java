@@ -0,0 +1,40 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares the {@link NativeChangeDir#preference()} of an implementation on its class, so the loader can compare the
+ * available implementations without creating (and maybe loading the native libraries of) each of them.
+ * The value must be the same, the annotated class returns from <code>preference()</code>. Implementations without
+ * this annotation are created once, to ask their preference. It is not inherited.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface NativePreference {
+    /**
+     * The preference of the annotated implementation.
+     * @return preference code
+     */
+    int value();
+}
@@ -0,0 +1,113 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * Result of a native call: success, or the <code>errno</code> the call has failed with. Instances are immutable.
+ */
+public final class NativeResult {
+
+    /** The errno value of failures, where the native backend can not tell the reason. Value: {@value #UNKNOWN_ERRNO} */
+    public static final int UNKNOWN_ERRNO = -1;
+
+    private static final NativeResult SUCCESS = new NativeResult(0);
+    private static final NativeResult UNKNOWN_FAILURE = new NativeResult(UNKNOWN_ERRNO);
+
+    private final int errno;
+
+    private NativeResult(int errno) {
+        this.errno = errno;
+    }
+
+    /**
+     * Returns the shared successful result.
+     * @return a successful result
+     */
+    public static NativeResult success() {
+        return SUCCESS;
+    }
+
+    /**
+     * Creates a failed result.
+     * @param errno the value of <code>errno</code> after the failed call
+     * @return a failed result
+     * @throws IllegalArgumentException in case errno is 0, that means success
+     */
+    public static NativeResult failure(int errno) {
+        if (errno == 0) {
+            throw new IllegalArgumentException("errno 0 is not a failure");
+        }
+        return errno == UNKNOWN_ERRNO ? UNKNOWN_FAILURE : new NativeResult(errno);
+    }
+
+    /**
+     * Returns the shared failed result with unknown reason.
+     * @return a failed result with {@link #UNKNOWN_ERRNO}
+     */
+    public static NativeResult unknownFailure() {
+        return UNKNOWN_FAILURE;
+    }
+
+    /**
+     * Tells if the native call was successful.
+     * @return <code>true</code> on success
+     */
+    public boolean isSuccess() {
+        return errno == 0;
+    }
+
+    /**
+     * The errno of the failed call.
+     * @return 0 on success, {@link #UNKNOWN_ERRNO} if the reason is not known, the errno value otherwise
+     */
+    public int errno() {
+        return errno;
+    }
+
+    /**
+     * Human readable description of the result, like <code>No such file or directory (ENOENT)</code>.
+     * Only the errno values, that are the same on Linux, macOS and Windows have names, others are shown as numbers.
+     * @return the description of the result
+     */
+    public String describe() {
+        switch (errno) {
+            case 0:
+                return "Success";
+            case UNKNOWN_ERRNO:
+                return "Unknown error";
+            case 1:
+                return "Operation not permitted (EPERM)";
+            case 2:
+                return "No such file or directory (ENOENT)";
+            case 5:
+                return "Input/output error (EIO)";
+            case 13:
+                return "Permission denied (EACCES)";
+            case 20:
+                return "Not a directory (ENOTDIR)";
+            case 22:
+                return "Invalid argument (EINVAL)";
+            default:
+                return "errno " + errno;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "NativeResult[" + describe() + "]";
+    }
+}
@@ -0,0 +1,41 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+/**
+ * Tells, which of the optional modules (<code>requires static</code> in <code>module-info</code>) can be used. The
+ * classes, that depend on them (the JFR events, the MBean registration), are only loaded, if they can. A module is
+ * missing from a runtime image built without it, and a module is not resolved on the module path, unless something
+ * else requires it, or it is added with <code>--add-modules</code>.
+ */
+final class OptionalModules {
+
+    /** <code>jdk.jfr</code>: the Flight Recorder events. */
+    static final boolean JFR = isReadable("jdk.jfr");
+
+    /** <code>java.management</code>: the registration of the statistics MBean. */
+    static final boolean MANAGEMENT = isReadable("java.management");
+
+    private OptionalModules() {
+    }
+
+    private static boolean isReadable(String name) {
+        Module self = OptionalModules.class.getModule();
+        ModuleLayer layer = self.getLayer() != null ? self.getLayer() : ModuleLayer.boot();
+        return layer.findModule(name).map(self::canRead).orElse(false);
+    }
+}
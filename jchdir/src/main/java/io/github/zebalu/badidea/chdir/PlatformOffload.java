@@ -0,0 +1,106 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import io.github.zebalu.badidea.chdir.util.ThreadUtil;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Small pool of platform threads, that do the blocking part of directory changes for virtual threads (see
+ * {@link ChdirConfig#offloadThreads()}). The virtual thread waits for the result, so it unmounts, and its carrier is
+ * free for other virtual threads, while the native call or file system access is running.
+ * <p>
+ * With {@link LockStrategy#SINGLE_WRITER} it is a single thread, that does the changes of every other thread.
+ */
+final class PlatformOffload {
+
+    private final ExecutorService pool;
+    private final boolean allThreads;
+    private final ThreadLocal<Boolean> poolThread = new ThreadLocal<>();
+
+    private PlatformOffload(int threads, String namePrefix, boolean allThreads) {
+        this.allThreads = allThreads;
+        AtomicInteger counter = new AtomicInteger();
+        pool = Executors.newFixedThreadPool(threads, task -> {
+            Thread thread = new Thread(() -> {
+                poolThread.set(Boolean.TRUE);
+                task.run();
+            }, namePrefix + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Creates the pool, if enabled.
+     * @param strategy {@link ChdirConfig#lockStrategy()}
+     * @param threads {@link ChdirConfig#offloadThreads()}
+     * @return the pool, or <code>null</code> if disabled
+     */
+    static PlatformOffload create(LockStrategy strategy, int threads) {
+        if (strategy == LockStrategy.SINGLE_WRITER) {
+            return new PlatformOffload(1, "jchdir-single-writer-", true);
+        }
+        return threads > 0 ? new PlatformOffload(threads, "jchdir-offload-", false) : null;
+    }
+
+    /**
+     * Whether the calling thread should hand over its work.
+     * @return <code>true</code> for virtual threads, or for every thread but the writer in single writer mode
+     */
+    boolean shouldOffload() {
+        if (allThreads) {
+            return poolThread.get() == null;
+        }
+        return ThreadUtil.isVirtual(Thread.currentThread());
+    }
+
+    /**
+     * Runs the task on the pool, and waits for it, even if interrupted (the interrupt status is kept), as the change
+     * can not be cancelled once started.
+     * @param task the work to do
+     * @param <T> the type of the result
+     * @return the result of the task
+     */
+    <T> T call(Supplier<T> task) {
+        try {
+            return CompletableFuture.supplyAsync(task, pool).join();
+        } catch (CompletionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw e;
+        }
+    }
+
+    void run(Runnable task) {
+        call(() -> {
+            task.run();
+            return null;
+        });
+    }
+}
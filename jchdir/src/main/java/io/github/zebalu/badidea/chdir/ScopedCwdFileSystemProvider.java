@@ -0,0 +1,509 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+package io.github.zebalu.badidea.chdir;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.AccessMode;
+import java.nio.file.CopyOption;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileStore;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystemAlreadyExistsException;
+import java.nio.file.FileSystems;
+import java.nio.file.LinkOption;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.ProviderMismatchException;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.FileAttributeView;
+import java.nio.file.attribute.UserPrincipalLookupService;
+import java.nio.file.spi.FileSystemProvider;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Wraps the default file system provider, so relative {@link Path}s resolve against the working directory bound to the
+ * calling thread by {@link ChangeDir#withScopedDir(String, Runnable)}, instead of the process wide one. Binding a
+ * directory takes no lock and changes nothing global, so any number of threads can have their own directory at the same
+ * time. Threads without a bound directory see no difference.
+ * <p>
+ * It has to be installed as the default provider when the JVM starts:
+ * <code>-Djava.nio.file.spi.DefaultFileSystemProvider=io.github.zebalu.badidea.chdir.ScopedCwdFileSystemProvider</code>.
+ * Only NIO is affected: {@link File} and native code still use the process wide working directory.
+ */
+public final class ScopedCwdFileSystemProvider extends FileSystemProvider {
+
+    private static final ThreadLocal<Path> SCOPED_DIR = new ThreadLocal<>();
+
+    private final FileSystemProvider delegate;
+    private final ScopedFileSystem fileSystem;
+
+    /**
+     * Creates the provider, the JDK calls it with its own default provider.
+     * @param delegate the built-in default provider
+     */
+    public ScopedCwdFileSystemProvider(FileSystemProvider delegate) {
+        this.delegate = delegate;
+        this.fileSystem = new ScopedFileSystem(this, delegate.getFileSystem(URI.create("file:///")));
+    }
+
+    /**
+     * Tells whether the provider is installed as the default one.
+     * @return <code>true</code> if relative paths of the default file system follow the bound directory
+     */
+    static boolean isInstalled() {
+        return FileSystems.getDefault().provider() instanceof ScopedCwdFileSystemProvider;
+    }
+
+    /**
+     * The directory bound to the calling thread.
+     * @return the absolute directory, or <code>null</code> if none is bound
+     */
+    static Path boundDir() {
+        return SCOPED_DIR.get();
+    }
+
+    /**
+     * Binds a directory to the calling thread.
+     * @param dir the absolute, validated directory
+     * @return the previously bound directory, to be passed to {@link #unbind(Path)}
+     */
+    static Path bind(String dir) {
+        Path previous = SCOPED_DIR.get();
+        SCOPED_DIR.set(((ScopedCwdFileSystemProvider) FileSystems.getDefault().provider()).fileSystem.delegate.getPath(dir));
+        return previous;
+    }
+
+    /**
+     * Restores the previously bound directory of the calling thread.
+     * @param previous the result of {@link #bind(String)}
+     */
+    static void unbind(Path previous) {
+        if (previous == null) {
+            SCOPED_DIR.remove();
+        } else {
+            SCOPED_DIR.set(previous);
+        }
+    }
+
+    /**
+     * Returns the path of the wrapped file system, that is behind a path of this provider.
+     * @param path any path
+     * @return the wrapped path, or the path itself, if it does not belong to this provider
+     */
+    static Path unwrap(Path path) {
+        return path instanceof ScopedPath ? ((ScopedPath) path).delegate : path;
+    }
+
+    /**
+     * Resolves a path of this provider against the bound directory, for the wrapped provider to work on.
+     */
+    private static Path resolved(Path path) {
+        if (!(path instanceof ScopedPath)) {
+            throw new ProviderMismatchException();
+        }
+        Path raw = ((ScopedPath) path).delegate;
+        Path scoped = SCOPED_DIR.get();
+        return scoped == null || raw.isAbsolute() ? raw : scoped.resolve(raw);
+    }
+
+    @Override
+    public String getScheme() {
+        return delegate.getScheme();
+    }
+
+    @Override
+    public FileSystem newFileSystem(URI uri, Map<String, ?> env) {
+        throw new FileSystemAlreadyExistsException();
+    }
+
+    @Override
+    public FileSystem getFileSystem(URI uri) {
+        delegate.getFileSystem(uri);
+        return fileSystem;
+    }
+
+    @Override
+    public Path getPath(URI uri) {
+        return fileSystem.wrap(delegate.getPath(uri));
+    }
+
+    @Override
+    public SeekableByteChannel newByteChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+            throws IOException {
+        return delegate.newByteChannel(resolved(path), options, attrs);
+    }
+
+    @Override
+    public FileChannel newFileChannel(Path path, Set<? extends OpenOption> options, FileAttribute<?>... attrs)
+            throws IOException {
+        return delegate.newFileChannel(resolved(path), options, attrs);
+    }
+
+    @Override
+    public AsynchronousFileChannel newAsynchronousFileChannel(Path path, Set<? extends OpenOption> options,
+            ExecutorService executor, FileAttribute<?>... attrs) throws IOException {
+        return delegate.newAsynchronousFileChannel(resolved(path), options, executor, attrs);
+    }
+
+    @Override
+    public InputStream newInputStream(Path path, OpenOption... options) throws IOException {
+        return delegate.newInputStream(resolved(path), options);
+    }
+
+    @Override
+    public OutputStream newOutputStream(Path path, OpenOption... options) throws IOException {
+        return delegate.newOutputStream(resolved(path), options);
+    }
+
+    @Override
+    public DirectoryStream<Path> newDirectoryStream(Path dir, DirectoryStream.Filter<? super Path> filter)
+            throws IOException {
+        Path listed = ((ScopedPath) dir).delegate;
+        DirectoryStream<Path> stream = delegate.newDirectoryStream(resolved(dir),
+                entry -> filter.accept(fileSystem.wrap(listed.resolve(entry.getFileName()))));
+        return new DirectoryStream<>() {
+            @Override
+            public Iterator<Path> iterator() {
+                Iterator<Path> entries = stream.iterator();
+                return new Iterator<>() {
+                    @Override
+                    public boolean hasNext() {
+                        return entries.hasNext();
+                    }
+
+                    @Override
+                    public Path next() {
+                        return fileSystem.wrap(listed.resolve(entries.next().getFileName()));
+                    }
+                };
+            }
+
+            @Override
+            public void close() throws IOException {
+                stream.close();
+            }
+        };
+    }
+
+    @Override
+    public void createDirectory(Path dir, FileAttribute<?>... attrs) throws IOException {
+        delegate.createDirectory(resolved(dir), attrs);
+    }
+
+    @Override
+    public void createSymbolicLink(Path link, Path target, FileAttribute<?>... attrs) throws IOException {
+        // a relative target is relative to the link, not to the working directory
+        delegate.createSymbolicLink(resolved(link), unwrap(target), attrs);
+    }
+
+    @Override
+    public void createLink(Path link, Path existing) throws IOException {
+        delegate.createLink(resolved(link), resolved(existing));
+    }
+
+    @Override
+    public void delete(Path path) throws IOException {
+        delegate.delete(resolved(path));
+    }
+
+    @Override
+    public boolean deleteIfExists(Path path) throws IOException {
+        return delegate.deleteIfExists(resolved(path));
+    }
+
+    @Override
+    public Path readSymbolicLink(Path link) throws IOException {
+        return fileSystem.wrap(delegate.readSymbolicLink(resolved(link)));
+    }
+
+    @Override
+    public void copy(Path source, Path target, CopyOption... options) throws IOException {
+        delegate.copy(resolved(source), resolved(target), options);
+    }
+
+    @Override
+    public void move(Path source, Path target, CopyOption... options) throws IOException {
+        delegate.move(resolved(source), resolved(target), options);
+    }
+
+    @Override
+    public boolean isSameFile(Path path, Path path2) throws IOException {
+        return delegate.isSameFile(resolved(path), resolved(path2));
+    }
+
+    @Override
+    public boolean isHidden(Path path) throws IOException {
+        return delegate.isHidden(resolved(path));
+    }
+
+    @Override
+    public FileStore getFileStore(Path path) throws IOException {
+        return delegate.getFileStore(resolved(path));
+    }
+
+    @Override
+    public void checkAccess(Path path, AccessMode... modes) throws IOException {
+        delegate.checkAccess(resolved(path), modes);
+    }
+
+    @Override
+    public <V extends FileAttributeView> V getFileAttributeView(Path path, Class<V> type, LinkOption... options) {
+        return delegate.getFileAttributeView(resolved(path), type, options);
+    }
+
+    @Override
+    public <A extends BasicFileAttributes> A readAttributes(Path path, Class<A> type, LinkOption... options)
+            throws IOException {
+        return delegate.readAttributes(resolved(path), type, options);
+    }
+
+    @Override
+    public Map<String, Object> readAttributes(Path path, String attributes, LinkOption... options) throws IOException {
+        return delegate.readAttributes(resolved(path), attributes, options);
+    }
+
+    @Override
+    public void setAttribute(Path path, String attribute, Object value, LinkOption... options) throws IOException {
+        delegate.setAttribute(resolved(path), attribute, value, options);
+    }
+
+    /**
+     * The default file system, with its paths wrapped.
+     */
+    private static final class ScopedFileSystem extends FileSystem {
+        private final ScopedCwdFileSystemProvider provider;
+        private final FileSystem delegate;
+
+        private ScopedFileSystem(ScopedCwdFileSystemProvider provider, FileSystem delegate) {
+            this.provider = provider;
+            this.delegate = delegate;
+        }
+
+        private Path wrap(Path path) {
+            return path == null ? null : new ScopedPath(this, path);
+        }
+
+        @Override
+        public FileSystemProvider provider() {
+            return provider;
+        }
+
+        @Override
+        public void close() throws IOException {
+            delegate.close();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return delegate.isOpen();
+        }
+
+        @Override
+        public boolean isReadOnly() {
+            return delegate.isReadOnly();
+        }
+
+        @Override
+        public String getSeparator() {
+            return delegate.getSeparator();
+        }
+
+        @Override
+        public Iterable<Path> getRootDirectories() {
+            List<Path> roots = new ArrayList<>();
+            delegate.getRootDirectories().forEach(root -> roots.add(wrap(root)));
+            return roots;
+        }
+
+        @Override
+        public Iterable<FileStore> getFileStores() {
+            return delegate.getFileStores();
+        }
+
+        @Override
+        public Set<String> supportedFileAttributeViews() {
+            return delegate.supportedFileAttributeViews();
+        }
+
+        @Override
+        public Path getPath(String first, String... more) {
+            return wrap(delegate.getPath(first, more));
+        }
+
+        @Override
+        public PathMatcher getPathMatcher(String syntaxAndPattern) {
+            PathMatcher matcher = delegate.getPathMatcher(syntaxAndPattern);
+            return path -> matcher.matches(unwrap(path));
+        }
+
+        @Override
+        public UserPrincipalLookupService getUserPrincipalLookupService() {
+            return delegate.getUserPrincipalLookupService();
+        }
+
+        @Override
+        public WatchService newWatchService() throws IOException {
+            return delegate.newWatchService();
+        }
+    }
+
+    /**
+     * A path of the wrapped file system. Relative paths stay relative, they are only resolved against the bound
+     * directory, when they are used.
+     */
+    private static final class ScopedPath implements Path {
+        private final ScopedFileSystem fileSystem;
+        private final Path delegate;
+
+        private ScopedPath(ScopedFileSystem fileSystem, Path delegate) {
+            this.fileSystem = fileSystem;
+            this.delegate = delegate;
+        }
+
+        @Override
+        public FileSystem getFileSystem() {
+            return fileSystem;
+        }
+
+        @Override
+        public boolean isAbsolute() {
+            return delegate.isAbsolute();
+        }
+
+        @Override
+        public Path getRoot() {
+            return fileSystem.wrap(delegate.getRoot());
+        }
+
+        @Override
+        public Path getFileName() {
+            return fileSystem.wrap(delegate.getFileName());
+        }
+
+        @Override
+        public Path getParent() {
+            return fileSystem.wrap(delegate.getParent());
+        }
+
+        @Override
+        public int getNameCount() {
+            return delegate.getNameCount();
+        }
+
+        @Override
+        public Path getName(int index) {
+            return fileSystem.wrap(delegate.getName(index));
+        }
+
+        @Override
+        public Path subpath(int beginIndex, int endIndex) {
+            return fileSystem.wrap(delegate.subpath(beginIndex, endIndex));
+        }
+
+        @Override
+        public boolean startsWith(Path other) {
+            return delegate.startsWith(unwrap(other));
+        }
+
+        @Override
+        public boolean endsWith(Path other) {
+            return delegate.endsWith(unwrap(other));
+        }
+
+        @Override
+        public Path normalize() {
+            return fileSystem.wrap(delegate.normalize());
+        }
+
+        @Override
+        public Path resolve(Path other) {
+            return fileSystem.wrap(delegate.resolve(unwrap(other)));
+        }
+
+        @Override
+        public Path relativize(Path other) {
+            return fileSystem.wrap(delegate.relativize(unwrap(other)));
+        }
+
+        @Override
+        public URI toUri() {
+            return resolved(this).toUri();
+        }
+
+        @Override
+        public Path toAbsolutePath() {
+            if (delegate.isAbsolute()) {
+                return this;
+            }
+            Path scoped = SCOPED_DIR.get();
+            return fileSystem.wrap(scoped != null ? scoped.resolve(delegate) : delegate.toAbsolutePath());
+        }
+
+        @Override
+        public Path toRealPath(LinkOption... options) throws IOException {
+            return fileSystem.wrap(resolved(this).toRealPath(options));
+        }
+
+        @Override
+        public File toFile() {
+            // the wrapped path would refuse, as its file system is not the default one any more
+            return new File(resolved(this).toString());
+        }
+
+        @Override
+        public WatchKey register(WatchService watcher, WatchEvent.Kind<?>[] events, WatchEvent.Modifier... modifiers)
+                throws IOException {
+            return resolved(this).register(watcher, events, modifiers);
+        }
+
+        @Override
+        public int compareTo(Path other) {
+            return delegate.compareTo(unwrap(other));
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof ScopedPath && delegate.equals(((ScopedPath) other).delegate);
+        }
+
+        @Override
+        public int hashCode() {
+            return delegate.hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return delegate.toString();
+        }
+    }
+}
@@ -0,0 +1,256 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded, least recently used cache of absolute paths, that have already been validated as existing directories,
+ * mapped to the snapshot of their canonical form (so the encoded forms are reused as well). The parent of every cached directory is watched by a {@link WatchService}, and the
+ * directory (with everything under it) is forgotten, as soon as it is deleted or renamed.
+ * <p>
+ * Only the direct parents are watched: renaming a grand parent, or retargeting a symbolic link is not noticed.
+ * Watching can be suspended (closing the watch service, so no inotify descriptor is open during a checkpoint), while
+ * suspended nothing is cached. This class is thread-safe.
+ */
+final class ValidatedPathCache {
+
+    private static final System.Logger LOG = System.getLogger(ValidatedPathCache.class.getName());
+
+    private final int capacity;
+    private final Level logLevel;
+    private final Map<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<Path, Watch> watches = new HashMap<>();
+    // null, while suspended
+    private WatchService watchService;
+    private Thread watcher;
+
+    private ValidatedPathCache(int capacity, Level logLevel) {
+        this.capacity = capacity;
+        this.logLevel = logLevel;
+    }
+
+    /**
+     * Creates a cache, and starts its watcher thread.
+     * @param capacity the maximum number of cached directories
+     * @param logLevel the level to log problems on
+     * @return the cache, or <code>null</code> in case capacity is not positive, or watching is not possible
+     */
+    static ValidatedPathCache create(int capacity, Level logLevel) {
+        if (capacity <= 0) {
+            return null;
+        }
+        ValidatedPathCache cache = new ValidatedPathCache(capacity, logLevel);
+        return cache.resume() ? cache : null;
+    }
+
+    /**
+     * Opens a new watch service, and starts a new watcher thread, if watching is suspended.
+     * @return <code>true</code> if the cache is watching the file system
+     */
+    synchronized boolean resume() {
+        if (watchService != null) {
+            return true;
+        }
+        try {
+            WatchService service = FileSystems.getDefault().newWatchService();
+            Thread thread = new Thread(() -> watch(service), "jchdir-path-cache-watcher");
+            thread.setDaemon(true);
+            thread.start();
+            watchService = service;
+            watcher = thread;
+            return true;
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.log(logLevel, "Can not watch the file system, validated paths are not cached", e);
+            return false;
+        }
+    }
+
+    /**
+     * Forgets every validated directory, closes the watch service, and waits for the watcher thread to stop. Nothing
+     * is cached until {@link #resume()}.
+     */
+    void suspend() {
+        Thread stopped;
+        synchronized (this) {
+            invalidateAll();
+            if (watchService == null) {
+                return;
+            }
+            try {
+                watchService.close();
+            } catch (IOException e) {
+                LOG.log(logLevel, "Can not close the watch service", e);
+            }
+            watchService = null;
+            stopped = watcher;
+            watcher = null;
+        }
+        // the watcher may be waiting for this monitor, so it is joined outside of it
+        try {
+            stopped.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Looks up a previously validated directory.
+     * @param absolutePath the absolute (but not necessarily canonical) path
+     * @return the snapshot of the canonical path, or <code>null</code> if it is not cached
+     */
+    synchronized CwdSnapshot get(String absolutePath) {
+        Entry entry = entries.get(absolutePath);
+        return entry == null ? null : entry.snapshot;
+    }
+
+    /**
+     * Remembers a validated directory, and starts watching its parent. The directory is checked again once the watch
+     * is in place, as a deletion before that would never be reported.
+     * @param absolutePath the absolute path, the directory was asked with
+     * @param snapshot the snapshot of the canonical path of the existing directory
+     */
+    synchronized void put(String absolutePath, CwdSnapshot snapshot) {
+        if (watchService == null || entries.containsKey(absolutePath)) {
+            return;
+        }
+        Path parent = snapshot.path().getParent();
+        if (parent == null || !watch(parent)) {
+            return;
+        }
+        if (!Files.isDirectory(snapshot.path())) {
+            unwatch(parent);
+            return;
+        }
+        entries.put(absolutePath, new Entry(snapshot, parent));
+        if (entries.size() > capacity) {
+            Iterator<Entry> eldest = entries.values().iterator();
+            Entry removed = eldest.next();
+            eldest.remove();
+            unwatch(removed.parent);
+        }
+    }
+
+    /**
+     * Forgets one directory, for example because it was found missing before its deletion was reported.
+     * @param absolutePath the absolute path, the directory was asked with
+     */
+    synchronized void remove(String absolutePath) {
+        Entry entry = entries.remove(absolutePath);
+        if (entry != null) {
+            unwatch(entry.parent);
+        }
+    }
+
+    private boolean watch(Path parent) {
+        Watch watch = watches.get(parent);
+        if (watch == null) {
+            try {
+                watch = new Watch(parent.register(watchService, StandardWatchEventKinds.ENTRY_DELETE));
+                watches.put(parent, watch);
+            } catch (IOException | ClosedWatchServiceException e) {
+                LOG.log(logLevel, "Can not watch: " + parent, e);
+                return false;
+            }
+        }
+        ++watch.users;
+        return true;
+    }
+
+    private void unwatch(Path parent) {
+        Watch watch = watches.get(parent);
+        if (watch != null && --watch.users == 0) {
+            watch.key.cancel();
+            watches.remove(parent);
+        }
+    }
+
+    private synchronized void invalidate(Path gone) {
+        Iterator<Entry> iterator = entries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (entry.snapshot.path().startsWith(gone)) {
+                iterator.remove();
+                unwatch(entry.parent);
+            }
+        }
+    }
+
+    /**
+     * Forgets every validated directory, they are checked again on their next use.
+     */
+    synchronized void invalidateAll() {
+        entries.clear();
+        watches.values().forEach(watch -> watch.key.cancel());
+        watches.clear();
+    }
+
+    private void watch(WatchService service) {
+        try {
+            while (true) {
+                WatchKey key = service.take();
+                Path dir = (Path) key.watchable();
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+                        invalidateAll();
+                    } else {
+                        invalidate(dir.resolve((Path) event.context()));
+                    }
+                }
+                if (!key.reset()) {
+                    invalidate(dir);
+                }
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+        } catch (ClosedWatchServiceException cwse) {
+            LOG.log(logLevel, "Path cache watcher has stopped");
+        }
+    }
+
+    private static final class Entry {
+        private final CwdSnapshot snapshot;
+        private final Path parent;
+
+        private Entry(CwdSnapshot snapshot, Path parent) {
+            this.snapshot = snapshot;
+            this.parent = parent;
+        }
+    }
+
+    private static final class Watch {
+        private final WatchKey key;
+        private int users;
+
+        private Watch(WatchKey key) {
+            this.key = key;
+        }
+    }
+}
@@ -1,36 +1,44 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-package io.github.zebalu.badidea.chdir.util;
-
-import java.util.Locale;
-
-/**
- * Utility class to collect OS related methods.
- */
-public final class OsUtil {
-    private OsUtil() {
-        throw new IllegalAccessError("Utility class");
-    }
-
-    /**
-     * Checks whether the actual OS is Windows or not.
-     * @return true if JVM is running on Windows.
-     */
-    public static boolean isWindows() {
-        return System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("windows");
-    }
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir.util;
+
+import java.util.Locale;
+
+/**
+ * Utility class to collect OS related methods.
+ */
+public final class OsUtil {
+    private OsUtil() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    /**
+     * Checks whether the actual OS is Windows or not.
+     * @return true if JVM is running on Windows.
+     */
+    public static boolean isWindows() {
+        return System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("windows");
+    }
+
+    /**
+     * Checks whether the actual OS is Linux or not.
+     * @return true if JVM is running on Linux.
+     */
+    public static boolean isLinux() {
+        return System.getProperty("os.name").toLowerCase(Locale.ROOT).contains("linux");
+    }
+}
@@ -1,26 +1,28 @@
-/*
-Copyright 2025 Balázs Zaicsek
-
-Licensed under the Apache License, Version 2.0 (the "License");
-you may not use this file except in compliance with the License.
-You may obtain a copy of the License at
-
-    http://www.apache.org/licenses/LICENSE-2.0
-
-Unless required by applicable law or agreed to in writing, software
-distributed under the License is distributed on an "AS IS" BASIS,
-WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
-See the License for the specific language governing permissions and
-limitations under the License.
- */
-
-/**
- * Implements an easy to use global "change current working directory" logic.
- */
-@SuppressWarnings("module")
-module change.dir.jchdir.main {
-    requires java.base;
-    exports io.github.zebalu.badidea.chdir;
-    exports io.github.zebalu.badidea.chdir.util to change.dir.jchdir.native_impl.jna, change.dir.jchdir.native_impl.jni, change.dir.jchdir.native_impl.ffm;
-    uses io.github.zebalu.badidea.chdir.NativeChangeDir;
-}
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+/**
+ * Implements an easy to use global "change current working directory" logic.
+ */
+@SuppressWarnings("module")
+module change.dir.jchdir.main {
+    requires java.base;
+    requires static java.management;
+    requires static jdk.jfr;
+    exports io.github.zebalu.badidea.chdir;
+    exports io.github.zebalu.badidea.chdir.util to change.dir.jchdir.native_impl.jna, change.dir.jchdir.native_impl.jni, change.dir.jchdir.native_impl.ffm;
+    uses io.github.zebalu.badidea.chdir.NativeChangeDir;
+}
@@ -0,0 +1,147 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AsyncChangeDispatcherTest {
+
+    private static final String START = absolute("start");
+    private static final String FIRST = absolute("first");
+    private static final String SECOND = absolute("second");
+    private static final String THIRD = absolute("third");
+    private static final String LAST = absolute("last");
+
+    private final AtomicReference<String> current = new AtomicReference<>(START);
+    private final List<String> applied = new CopyOnWriteArrayList<>();
+    private final CountDownLatch firstEntered = new CountDownLatch(1);
+    private final CountDownLatch releaseFirst = new CountDownLatch(1);
+
+    @Test
+    void completesWithTheDirectoryAfterTheChange() throws Exception {
+        AsyncChangeDispatcher dispatcher = new AsyncChangeDispatcher(this::apply, current::get);
+
+        assertEquals(FIRST, get(dispatcher.submit("first")));
+        assertEquals(List.of(FIRST), applied);
+    }
+
+    @Test
+    void appliesOnlyTheLatestOfTheRequestsThatPiledUp() throws Exception {
+        AsyncChangeDispatcher dispatcher = new AsyncChangeDispatcher(this::blockOnFirst, current::get);
+        CompletableFuture<String> first = dispatcher.submit(FIRST);
+        awaitFirst();
+        CompletableFuture<String> second = dispatcher.submit(SECOND);
+        CompletableFuture<String> third = dispatcher.submit(THIRD);
+        CompletableFuture<String> last = dispatcher.submit(LAST);
+        releaseFirst.countDown();
+
+        assertEquals(FIRST, get(first));
+        assertEquals(LAST, get(second));
+        assertEquals(LAST, get(third));
+        assertEquals(LAST, get(last));
+        assertEquals(List.of(FIRST, LAST), applied);
+    }
+
+    @Test
+    void failedLatestRequestLeavesTheSupersededOnesWithTheUnchangedDirectory() throws Exception {
+        IllegalArgumentException failure = new IllegalArgumentException("no such directory");
+        AsyncChangeDispatcher dispatcher = new AsyncChangeDispatcher(dir -> {
+            if (dir.equals(LAST)) {
+                throw failure;
+            }
+            blockOnFirst(dir);
+        }, current::get);
+        CompletableFuture<String> first = dispatcher.submit(FIRST);
+        awaitFirst();
+        CompletableFuture<String> second = dispatcher.submit(SECOND);
+        CompletableFuture<String> last = dispatcher.submit(LAST);
+        releaseFirst.countDown();
+
+        assertEquals(FIRST, get(first));
+        assertSame(failure, cause(last));
+        assertEquals(FIRST, get(second));
+    }
+
+    @Test
+    void errorCompletesEveryFutureOfTheBatch() throws Exception {
+        AssertionError failure = new AssertionError("broken backend");
+        AsyncChangeDispatcher dispatcher = new AsyncChangeDispatcher(dir -> {
+            if (dir.equals(LAST)) {
+                throw failure;
+            }
+            blockOnFirst(dir);
+        }, current::get);
+        CompletableFuture<String> first = dispatcher.submit(FIRST);
+        awaitFirst();
+        CompletableFuture<String> second = dispatcher.submit(SECOND);
+        CompletableFuture<String> last = dispatcher.submit(LAST);
+        releaseFirst.countDown();
+
+        assertEquals(FIRST, get(first));
+        assertSame(failure, cause(second));
+        assertSame(failure, cause(last));
+        assertEquals(THIRD, get(dispatcher.submit(THIRD)));
+    }
+
+    private void apply(String dir) {
+        applied.add(dir);
+        current.set(dir);
+    }
+
+    private void blockOnFirst(String dir) {
+        if (dir.equals(FIRST)) {
+            firstEntered.countDown();
+            try {
+                assertTrue(releaseFirst.await(10, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+        }
+        apply(dir);
+    }
+
+    private void awaitFirst() throws InterruptedException {
+        assertTrue(firstEntered.await(10, TimeUnit.SECONDS), "the first change has not started");
+    }
+
+    private static String get(CompletableFuture<String> future) throws Exception {
+        return future.get(10, TimeUnit.SECONDS);
+    }
+
+    private static Throwable cause(CompletableFuture<String> future) {
+        return assertThrows(ExecutionException.class, () -> get(future)).getCause();
+    }
+
+    private static String absolute(String dir) {
+        return new File(dir).getAbsolutePath();
+    }
+}
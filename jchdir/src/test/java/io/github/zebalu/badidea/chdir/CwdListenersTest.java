@@ -0,0 +1,112 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.System.Logger.Level;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CwdListenersTest {
+
+    private final CwdListeners listeners = new CwdListeners(Level.DEBUG);
+    private final BlockingQueue<String> calls = new LinkedBlockingQueue<>();
+    private final BlockingQueue<String> laterCalls = new LinkedBlockingQueue<>();
+
+    @Test
+    void busyListenerOnlyGetsTheLatestDirectory() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        listeners.add(dir -> {
+            calls.add(dir);
+            entered.countDown();
+            await(release);
+        }, "/start");
+        listeners.publish("/a");
+        await(entered);
+        listeners.publish("/b");
+        listeners.publish("/c");
+        listeners.publish("/d");
+        release.countDown();
+
+        assertEquals(List.of("/a", "/d"), take(calls, 2));
+        listeners.publish("/end");
+        assertEquals("/end", calls.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void sameDirectoryIsNotPassedTwiceInARow() throws Exception {
+        listeners.add(calls::add, "/start");
+        listeners.publish("/start");
+        listeners.publish("/a");
+        assertEquals("/a", calls.poll(10, TimeUnit.SECONDS));
+        listeners.publish("/a");
+        listeners.publish("/b");
+        assertEquals("/b", calls.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void failingListenerStaysRegistered() throws Exception {
+        listeners.add(dir -> {
+            calls.add(dir);
+            throw new IllegalStateException("listener failure");
+        }, "/start");
+        listeners.publish("/a");
+        assertEquals("/a", calls.poll(10, TimeUnit.SECONDS));
+        listeners.publish("/b");
+        assertEquals("/b", calls.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void removedListenerIsNotCalled() throws Exception {
+        CwdListener listener = calls::add;
+        listeners.add(listener, "/start");
+        listeners.add(laterCalls::add, "/start");
+        assertTrue(listeners.remove(listener));
+        assertFalse(listeners.remove(listener));
+        listeners.publish("/a");
+
+        assertEquals("/a", laterCalls.poll(10, TimeUnit.SECONDS));
+        assertTrue(calls.isEmpty());
+    }
+
+    private static List<String> take(BlockingQueue<String> queue, int count) throws InterruptedException {
+        List<String> taken = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            taken.add(queue.poll(10, TimeUnit.SECONDS));
+        }
+        return taken;
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            assertTrue(latch.await(10, TimeUnit.SECONDS));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,117 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class DirScopeTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final ChangeDir changeDir = ChangeDir.getInstance();
+    private String start;
+    private String outer;
+    private String inner;
+
+    @BeforeEach
+    void createDirs() throws Exception {
+        start = changeDir.getCWD();
+        outer = Files.createDirectory(tempDir.resolve("outer")).toRealPath().toString();
+        inner = Files.createDirectory(tempDir.resolve("inner")).toRealPath().toString();
+    }
+
+    @AfterEach
+    void changeBack() {
+        changeDir.changeDir(start);
+    }
+
+    @Test
+    void closeChangesBackToThePreviousDirectory() {
+        try (DirScope scope = changeDir.push(outer)) {
+            assertEquals(outer, changeDir.getCWD());
+            assertEquals(start, scope.previousDir());
+        }
+        assertEquals(start, changeDir.getCWD());
+        assertEquals(start, System.getProperty("user.dir"));
+        assertEquals(start, new File("").getAbsolutePath());
+    }
+
+    @Test
+    void outOfOrderCloseFailsAndKeepsTheDirectory() {
+        DirScope outerScope = changeDir.push(outer);
+        DirScope innerScope = changeDir.push(inner);
+
+        assertThrows(IllegalStateException.class, outerScope::close);
+        assertEquals(inner, changeDir.getCWD());
+
+        innerScope.close();
+        assertEquals(outer, changeDir.getCWD());
+        outerScope.close();
+        assertEquals(start, changeDir.getCWD());
+    }
+
+    @Test
+    void closingTwiceHasNoEffect() {
+        DirScope outerScope = changeDir.push(outer);
+        DirScope innerScope = changeDir.push(inner);
+        innerScope.close();
+        changeDir.changeDir(inner);
+
+        innerScope.close();
+        assertEquals(inner, changeDir.getCWD());
+        outerScope.close();
+        assertEquals(start, changeDir.getCWD());
+    }
+
+    @Test
+    void onlyTheCreatingThreadCanClose() throws Exception {
+        try (DirScope scope = changeDir.push(outer)) {
+            CompletableFuture<Void> otherThread = CompletableFuture.runAsync(scope::close);
+            ExecutionException e = assertThrows(ExecutionException.class, () -> otherThread.get(10, TimeUnit.SECONDS));
+            assertInstanceOf(IllegalStateException.class, e.getCause());
+            assertEquals(outer, changeDir.getCWD());
+        }
+        assertEquals(start, changeDir.getCWD());
+    }
+
+    @Test
+    void runInChangesBackWhenTheTaskFails() {
+        IllegalStateException failure = new IllegalStateException("task failure");
+        IllegalStateException thrown = assertThrows(IllegalStateException.class, () -> changeDir.runIn(outer, () -> {
+            assertEquals(outer, changeDir.getCWD());
+            throw failure;
+        }));
+
+        assertEquals(failure, thrown);
+        assertEquals(start, changeDir.getCWD());
+    }
+}
@@ -0,0 +1,97 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    private static final int LAST_BUCKET = 36 * 4 - 1;
+
+    @Test
+    void smallValuesHaveTheirOwnBucket() {
+        for (int value = 0; value < 4; ++value) {
+            assertEquals(value, LatencyHistogram.bucket(value));
+            assertEquals(value, LatencyHistogram.upperBound(value));
+        }
+    }
+
+    @Test
+    void bucketsAreContiguous() {
+        for (int bucket = 0; bucket < LAST_BUCKET; ++bucket) {
+            long upper = LatencyHistogram.upperBound(bucket);
+            assertEquals(bucket, LatencyHistogram.bucket(upper), "upper bound of bucket " + bucket);
+            assertEquals(bucket + 1, LatencyHistogram.bucket(upper + 1), "value after bucket " + bucket);
+        }
+    }
+
+    @Test
+    void upperBoundIsAtMostAQuarterAboveTheValue() {
+        for (long value = 4; value < (1L << 37); value = value * 3 / 2 + 1) {
+            long upper = LatencyHistogram.upperBound(LatencyHistogram.bucket(value));
+            assertTrue(upper >= value, "upper bound " + upper + " is below " + value);
+            assertTrue(upper - value <= value / 4, "upper bound " + upper + " is too far from " + value);
+        }
+    }
+
+    @Test
+    void hugeValuesGoToTheLastBucket() {
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucket(1L << 40));
+        assertEquals(LAST_BUCKET, LatencyHistogram.bucket(Long.MAX_VALUE));
+    }
+
+    @Test
+    void percentilesAreUpperBoundsOfTheRankedBucket() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (long value = 1; value <= 1000; ++value) {
+            histogram.record(value);
+        }
+        PhaseLatency latency = histogram.snapshot();
+        assertEquals(1000, latency.getCount());
+        assertEquals(500, latency.getMeanNanos());
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(500)), latency.getP50Nanos());
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(900)), latency.getP90Nanos());
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(990)), latency.getP99Nanos());
+        assertEquals(LatencyHistogram.upperBound(LatencyHistogram.bucket(999)), latency.getP999Nanos());
+        assertEquals(1000, latency.getMaxNanos());
+    }
+
+    @Test
+    void negativeTimesAreRecordedAsZero() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(-5);
+        PhaseLatency latency = histogram.snapshot();
+        assertEquals(1, latency.getCount());
+        assertEquals(0, latency.getP50Nanos());
+        assertEquals(0, latency.getMaxNanos());
+    }
+
+    @Test
+    void resetForgetsEverything() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(100);
+        histogram.reset();
+        PhaseLatency latency = histogram.snapshot();
+        assertEquals(0, latency.getCount());
+        assertEquals(0, latency.getMeanNanos());
+        assertEquals(0, latency.getP99Nanos());
+        assertEquals(0, latency.getMaxNanos());
+    }
+}
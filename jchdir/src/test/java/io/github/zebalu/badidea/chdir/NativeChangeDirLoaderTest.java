@@ -0,0 +1,157 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * The providers below are registered in the test resources, in an order, where the preferred one is neither the first,
+ * nor the last.
+ */
+class NativeChangeDirLoaderTest {
+
+    @BeforeEach
+    void resetCounters() {
+        Preferred.CREATED.set(0);
+        Unpreferred.CREATED.set(0);
+        Unannotated.CREATED.set(0);
+    }
+
+    @Test
+    void greatestPreferenceOnlyCreatesTheSelectedAndTheUnannotatedProviders() {
+        NativeChangeDir selected = NativeChangeDirLoader.loadGreatestPreference();
+
+        assertInstanceOf(Preferred.class, selected);
+        assertEquals(1, Preferred.CREATED.get());
+        assertEquals(0, Unpreferred.CREATED.get());
+        assertEquals(1, Unannotated.CREATED.get());
+    }
+
+    @Test
+    void pinnedClassNameIsCreatedDirectly() {
+        NativeChangeDir selected = NativeChangeDirLoader.loadPinned(Unpreferred.class.getName());
+
+        assertInstanceOf(Unpreferred.class, selected);
+        assertEquals(0, Preferred.CREATED.get());
+        assertEquals(1, Unpreferred.CREATED.get());
+        assertEquals(0, Unannotated.CREATED.get());
+    }
+
+    @Test
+    void pinnedNoneDoesNotChangeTheNativeDirectory() {
+        NativeChangeDir selected = NativeChangeDirLoader.loadPinned("none");
+
+        assertEquals(0, selected.preference());
+        assertFalse(selected.changeDir(System.getProperty("user.dir")));
+        assertEquals(0, Preferred.CREATED.get() + Unpreferred.CREATED.get() + Unannotated.CREATED.get());
+    }
+
+    @Test
+    void aliasesThatAreNotAvailableAreReportedByTheirAlias() {
+        for (String alias : List.of("ffm", "fdcache", "jna", "jni")) {
+            IllegalStateException e = assertThrows(IllegalStateException.class,
+                    () -> NativeChangeDirLoader.loadPinned(alias));
+            assertEquals("Pinned native backend is not available: " + alias, e.getMessage());
+        }
+    }
+
+    @Test
+    void unknownPinnedBackendFails() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> NativeChangeDirLoader.loadPinned("com.example.MissingChangeDir"));
+        assertEquals("Pinned native backend is not available: com.example.MissingChangeDir", e.getMessage());
+    }
+
+    @Test
+    void pinnedClassHasToImplementNativeChangeDir() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> NativeChangeDirLoader.loadPinned(String.class.getName()));
+        assertEquals("Pinned native backend does not implement NativeChangeDir: java.lang.String", e.getMessage());
+    }
+
+    @Test
+    void failingConstructorOfPinnedBackendIsReported() {
+        IllegalStateException e = assertThrows(IllegalStateException.class,
+                () -> NativeChangeDirLoader.loadPinned(Failing.class.getName()));
+        assertSame(Failing.FAILURE, e.getCause());
+    }
+
+    @NativePreference(10)
+    public static class Preferred extends TestChangeDir {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        public Preferred() {
+            CREATED.incrementAndGet();
+        }
+    }
+
+    @NativePreference(1)
+    public static class Unpreferred extends TestChangeDir {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        public Unpreferred() {
+            CREATED.incrementAndGet();
+        }
+    }
+
+    public static class Unannotated extends TestChangeDir {
+        static final AtomicInteger CREATED = new AtomicInteger();
+
+        public Unannotated() {
+            CREATED.incrementAndGet();
+        }
+
+        @Override
+        public int preference() {
+            return 5;
+        }
+    }
+
+    public static class Failing extends TestChangeDir {
+        static final IllegalStateException FAILURE = new IllegalStateException("no native library");
+
+        public Failing() {
+            throw FAILURE;
+        }
+    }
+
+    /**
+     * Does not touch the native working directory, so other tests can use {@link ChangeDir} with any of them.
+     */
+    abstract static class TestChangeDir implements NativeChangeDir {
+
+        @Override
+        public boolean changeDir(String dir) {
+            return false;
+        }
+
+        @Override
+        public int preference() {
+            return getClass().getAnnotation(NativePreference.class).value();
+        }
+    }
+}
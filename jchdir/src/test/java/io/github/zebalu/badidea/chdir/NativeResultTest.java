@@ -0,0 +1,63 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NativeResultTest {
+
+    @Test
+    void errnoZeroIsNotAFailure() {
+        assertThrows(IllegalArgumentException.class, () -> NativeResult.failure(0));
+    }
+
+    @Test
+    void unknownErrnoIsTheSharedUnknownFailure() {
+        NativeResult result = NativeResult.failure(NativeResult.UNKNOWN_ERRNO);
+
+        assertSame(NativeResult.unknownFailure(), result);
+        assertFalse(result.isSuccess());
+        assertEquals(-1, result.errno());
+        assertEquals("Unknown error", result.describe());
+    }
+
+    @Test
+    void failureKeepsItsErrno() {
+        NativeResult result = NativeResult.failure(2);
+
+        assertFalse(result.isSuccess());
+        assertEquals(2, result.errno());
+        assertEquals("No such file or directory (ENOENT)", result.describe());
+        assertEquals("errno 4242", NativeResult.failure(4242).describe());
+    }
+
+    @Test
+    void successIsShared() {
+        NativeResult result = NativeResult.success();
+
+        assertSame(result, NativeResult.success());
+        assertTrue(result.isSuccess());
+        assertEquals(0, result.errno());
+        assertEquals("NativeResult[Success]", result.toString());
+    }
+}
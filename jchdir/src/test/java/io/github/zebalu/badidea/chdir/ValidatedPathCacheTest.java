@@ -0,0 +1,162 @@
+/*
+Copyright 2025 Balázs Zaicsek
+
+Licensed under the Apache License, Version 2.0 (the "License");
+you may not use this file except in compliance with the License.
+You may obtain a copy of the License at
+
+    http://www.apache.org/licenses/LICENSE-2.0
+
+Unless required by applicable law or agreed to in writing, software
+distributed under the License is distributed on an "AS IS" BASIS,
+WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+See the License for the specific language governing permissions and
+limitations under the License.
+ */
+
+package io.github.zebalu.badidea.chdir;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.lang.System.Logger.Level;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ValidatedPathCacheTest {
+
+    // the polling watch service of some platforms only looks every few seconds
+    private static final long INVALIDATION_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    @TempDir
+    Path tempDir;
+
+    private ValidatedPathCache cache;
+
+    @AfterEach
+    void stopWatching() {
+        if (cache != null) {
+            cache.suspend();
+        }
+    }
+
+    @Test
+    void nothingIsCachedWithoutCapacity() {
+        assertNull(ValidatedPathCache.create(0, Level.DEBUG));
+    }
+
+    @Test
+    void leastRecentlyUsedDirectoryIsEvicted() throws IOException {
+        cache = ValidatedPathCache.create(2, Level.DEBUG);
+        String first = put(directory("first"));
+        String second = put(directory("second"));
+        assertNotNull(cache.get(first));
+        String third = put(directory("third"));
+
+        assertNotNull(cache.get(first));
+        assertNull(cache.get(second));
+        assertNotNull(cache.get(third));
+    }
+
+    @Test
+    void cachedSnapshotIsReturned() throws IOException {
+        cache = ValidatedPathCache.create(2, Level.DEBUG);
+        String dir = directory("dir");
+        CwdSnapshot snapshot = new CwdSnapshot(dir);
+        cache.put(dir, snapshot);
+
+        assertSame(snapshot, cache.get(dir));
+    }
+
+    @Test
+    void missingDirectoryIsNotCached() {
+        cache = ValidatedPathCache.create(2, Level.DEBUG);
+        String missing = tempDir.resolve("missing").toString();
+        cache.put(missing, new CwdSnapshot(missing));
+
+        assertNull(cache.get(missing));
+    }
+
+    @Test
+    void deletedDirectoryIsForgotten() throws Exception {
+        cache = ValidatedPathCache.create(4, Level.DEBUG);
+        String deleted = put(directory("deleted"));
+        String kept = put(directory("kept"));
+        Files.delete(Path.of(deleted));
+
+        awaitInvalidation(deleted);
+        assertNotNull(cache.get(kept));
+    }
+
+    @Test
+    void renamedDirectoryIsForgotten() throws Exception {
+        cache = ValidatedPathCache.create(4, Level.DEBUG);
+        String renamed = put(directory("renamed"));
+        Files.move(Path.of(renamed), tempDir.resolve("moved"));
+
+        awaitInvalidation(renamed);
+    }
+
+    @Test
+    void removedDirectoryIsForgotten() throws IOException {
+        cache = ValidatedPathCache.create(2, Level.DEBUG);
+        String removed = put(directory("removed"));
+        String kept = put(directory("kept"));
+        cache.remove(removed);
+
+        assertNull(cache.get(removed));
+        assertNotNull(cache.get(kept));
+    }
+
+    @Test
+    void invalidateAllForgetsEverything() throws IOException {
+        cache = ValidatedPathCache.create(4, Level.DEBUG);
+        String first = put(directory("first"));
+        String second = put(directory("second"));
+        cache.invalidateAll();
+
+        assertNull(cache.get(first));
+        assertNull(cache.get(second));
+    }
+
+    @Test
+    void suspendedCacheIsEmptyUntilResumed() throws Exception {
+        cache = ValidatedPathCache.create(4, Level.DEBUG);
+        String dir = put(directory("dir"));
+        cache.suspend();
+        assertNull(cache.get(dir));
+        put(dir);
+        assertNull(cache.get(dir));
+
+        assertTrue(cache.resume());
+        put(dir);
+        assertNotNull(cache.get(dir));
+        Files.delete(Path.of(dir));
+        awaitInvalidation(dir);
+    }
+
+    private String directory(String name) throws IOException {
+        return Files.createDirectory(tempDir.resolve(name)).toRealPath().toString();
+    }
+
+    private String put(String dir) {
+        cache.put(dir, new CwdSnapshot(dir));
+        return dir;
+    }
+
+    private void awaitInvalidation(String dir) throws InterruptedException {
+        long start = System.nanoTime();
+        while (cache.get(dir) != null) {
+            assertTrue(System.nanoTime() - start < INVALIDATION_TIMEOUT_NANOS, "still cached: " + dir);
+            Thread.sleep(10);
+        }
+    }
+}